@@ -0,0 +1,367 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Handles to assignment classes. They live in the default package and cannot be
+ * imported from here, so they are looked up by name once. Static final handles
+ * are constants to the JIT, calls through them are inlined like direct calls.
+ *
+ * Handles of each benchmark class sit in their own holder, which is initialized
+ * on first use only. A benchmark therefore runs against any tree that has the
+ * classes it needs, e.g. PercolationBenchmark against the original assignment,
+ * to give a baseline for later changes.
+ */
+final class Assignments
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private Assignments()
+    {
+    }
+
+    /**
+     * PercolationBenchmark. Without reset() a fresh Percolation is made instead.
+     */
+    private static final class PercolationHandles
+    {
+        static final MethodHandle NEW, OPEN, IS_FULL, PERCOLATES, RESET;
+
+        static {
+            try {
+                Class<?> percolation = Class.forName("Percolation");
+
+                NEW = LOOKUP.findConstructor(percolation, MethodType.methodType(void.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class));
+                OPEN = virtual(percolation, "open", void.class, int.class, int.class);
+                IS_FULL = virtual(percolation, "isFull", boolean.class, int.class, int.class);
+                PERCOLATES = virtual(percolation, "percolates", boolean.class);
+                RESET = optional(percolation, "reset", void.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /**
+     * PercolationStatsBenchmark. Without the seeded constructor PercolationStats(N, T)
+     * is used, seed and flags are then ignored.
+     */
+    private static final class StatsHandles
+    {
+        static final MethodHandle NEW, NEW_UNSEEDED;
+
+        static {
+            try {
+                Class<?> stats = Class.forName("PercolationStats");
+                MethodHandle seeded = null;
+
+                try {
+                    seeded = LOOKUP.findConstructor(stats,
+                            MethodType.methodType(void.class, int.class, int.class, long.class, int.class))
+                        .asType(MethodType.methodType(Object.class, int.class, int.class, long.class, int.class));
+                } catch (NoSuchMethodException e) {
+                    // Original assignment, fall back below.
+                }
+
+                NEW = seeded;
+                NEW_UNSEEDED = LOOKUP.findConstructor(stats, MethodType.methodType(void.class, int.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class, int.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /**
+     * DequeBenchmark.
+     */
+    private static final class DequeHandles
+    {
+        static final MethodHandle NEW, ADD_LAST, REMOVE_FIRST, IS_EMPTY;
+        static final MethodHandle NEW_CONCURRENT, CONCURRENT_ADD_LAST, CONCURRENT_POLL_FIRST;
+
+        static {
+            try {
+                Class<?> deque = Class.forName("Deque");
+                Class<?> concurrent = Class.forName("ConcurrentDeque");
+
+                NEW = constructor(deque);
+                ADD_LAST = virtual(deque, "addLast", void.class, Object.class);
+                REMOVE_FIRST = virtual(deque, "removeFirst", Object.class);
+                IS_EMPTY = virtual(deque, "isEmpty", boolean.class);
+
+                NEW_CONCURRENT = constructor(concurrent);
+                CONCURRENT_ADD_LAST = virtual(concurrent, "addLast", void.class, Object.class);
+                CONCURRENT_POLL_FIRST = virtual(concurrent, "pollFirst", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /**
+     * RandomizedQueueBenchmark.
+     */
+    private static final class QueueHandles
+    {
+        static final MethodHandle NEW, ENQUEUE, DEQUEUE, IS_EMPTY;
+        static final MethodHandle NEW_STRIPED, STRIPED_ENQUEUE, STRIPED_POLL;
+
+        static {
+            try {
+                Class<?> queue = Class.forName("RandomizedQueue");
+                Class<?> striped = Class.forName("ConcurrentRandomizedQueue");
+
+                NEW = constructor(queue);
+                ENQUEUE = virtual(queue, "enqueue", void.class, Object.class);
+                DEQUEUE = virtual(queue, "dequeue", Object.class);
+                IS_EMPTY = virtual(queue, "isEmpty", boolean.class);
+
+                NEW_STRIPED = constructor(striped);
+                STRIPED_ENQUEUE = virtual(striped, "enqueue", void.class, Object.class);
+                STRIPED_POLL = virtual(striped, "poll", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type) throws ReflectiveOperationException
+    {
+        return LOOKUP.findConstructor(type, MethodType.methodType(void.class))
+            .asType(MethodType.methodType(Object.class));
+    }
+
+    /**
+     * Instance method with the receiver typed as Object.
+     */
+    private static MethodHandle virtual(Class<?> type, String name, Class<?> result, Class<?>... params)
+        throws ReflectiveOperationException
+    {
+        MethodType methodType = MethodType.methodType(result, params);
+
+        return LOOKUP.findVirtual(type, name, methodType).asType(methodType.insertParameterTypes(0, Object.class));
+    }
+
+    /**
+     * Like virtual(), null if the method does not exist.
+     */
+    private static MethodHandle optional(Class<?> type, String name, Class<?> result, Class<?>... params)
+        throws ReflectiveOperationException
+    {
+        try {
+            return virtual(type, name, result, params);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static Object newPercolation(int n)
+    {
+        try {
+            return (Object) PercolationHandles.NEW.invokeExact(n);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void open(Object percolation, int y, int x)
+    {
+        try {
+            PercolationHandles.OPEN.invokeExact(percolation, y, x);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean isFull(Object percolation, int y, int x)
+    {
+        try {
+            return (boolean) PercolationHandles.IS_FULL.invokeExact(percolation, y, x);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean percolates(Object percolation)
+    {
+        try {
+            return (boolean) PercolationHandles.PERCOLATES.invokeExact(percolation);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Blocked N-by-N grid: percolation itself after reset(), or a new one if
+     * there is no reset().
+     */
+    static Object reset(Object percolation, int n)
+    {
+        if (PercolationHandles.RESET == null) {
+            return newPercolation(n);
+        }
+
+        try {
+            PercolationHandles.RESET.invokeExact(percolation);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+
+        return percolation;
+    }
+
+    static Object newPercolationStats(int n, int trials, long seed, int flags)
+    {
+        try {
+            if (StatsHandles.NEW == null) {
+                return (Object) StatsHandles.NEW_UNSEEDED.invokeExact(n, trials);
+            }
+
+            return (Object) StatsHandles.NEW.invokeExact(n, trials, seed, flags);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newDeque()
+    {
+        try {
+            return (Object) DequeHandles.NEW.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void dequeAddLast(Object deque, Object item)
+    {
+        try {
+            DequeHandles.ADD_LAST.invokeExact(deque, item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object dequeRemoveFirst(Object deque)
+    {
+        try {
+            return (Object) DequeHandles.REMOVE_FIRST.invokeExact(deque);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean dequeIsEmpty(Object deque)
+    {
+        try {
+            return (boolean) DequeHandles.IS_EMPTY.invokeExact(deque);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newConcurrentDeque()
+    {
+        try {
+            return (Object) DequeHandles.NEW_CONCURRENT.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void concurrentAddLast(Object deque, Object item)
+    {
+        try {
+            DequeHandles.CONCURRENT_ADD_LAST.invokeExact(deque, item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object concurrentPollFirst(Object deque)
+    {
+        try {
+            return (Object) DequeHandles.CONCURRENT_POLL_FIRST.invokeExact(deque);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newRandomizedQueue()
+    {
+        try {
+            return (Object) QueueHandles.NEW.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void queueEnqueue(Object queue, Object item)
+    {
+        try {
+            QueueHandles.ENQUEUE.invokeExact(queue, item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object queueDequeue(Object queue)
+    {
+        try {
+            return (Object) QueueHandles.DEQUEUE.invokeExact(queue);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean queueIsEmpty(Object queue)
+    {
+        try {
+            return (boolean) QueueHandles.IS_EMPTY.invokeExact(queue);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newStripedQueue()
+    {
+        try {
+            return (Object) QueueHandles.NEW_STRIPED.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void stripedEnqueue(Object queue, Object item)
+    {
+        try {
+            QueueHandles.STRIPED_ENQUEUE.invokeExact(queue, item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object stripedPoll(Object queue)
+    {
+        try {
+            return (Object) QueueHandles.STRIPED_POLL.invokeExact(queue);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e)
+    {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        return new IllegalStateException(e);
+    }
+}
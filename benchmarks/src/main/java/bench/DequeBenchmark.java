@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Producers adding at one end and consumers polling the other, lock-free
+ * ConcurrentDeque against Deque guarded by synchronized. Change the number
+ * of producers and consumers with -tg, e.g. -tg 32,32.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class DequeBenchmark
+{
+    private static final Object ITEM = new Object();
+
+    Object concurrent, plain;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+        concurrent = Assignments.newConcurrentDeque();
+        plain = Assignments.newDeque();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public void concurrentAdd()
+    {
+        Assignments.concurrentAddLast(concurrent, ITEM);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public Object concurrentPoll()
+    {
+        return Assignments.concurrentPollFirst(concurrent);
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(2)
+    public void synchronizedAdd()
+    {
+        synchronized (plain) {
+            Assignments.dequeAddLast(plain, ITEM);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(2)
+    public Object synchronizedPoll()
+    {
+        synchronized (plain) {
+            return Assignments.dequeIsEmpty(plain) ? null : Assignments.dequeRemoveFirst(plain);
+        }
+    }
+}
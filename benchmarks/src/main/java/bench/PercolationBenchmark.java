@@ -0,0 +1,138 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of single Percolation operations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PercolationBenchmark
+{
+    /**
+     * Empty grid and random order of its sites. Sites are opened one per call,
+     * grid is reset once all are open, which is amortised over N^2 calls.
+     */
+    @State(Scope.Thread)
+    public static class Opening
+    {
+        @Param({ "100", "1000", "5000" })
+        int N;
+
+        Object percolation;
+        int[] ys, xs;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            percolation = Assignments.newPercolation(N);
+            ys = new int[N * N];
+            xs = new int[N * N];
+
+            int[] order = shuffled(N * N, 42);
+            for (int i = 0; i < order.length; i++) {
+                ys[i] = order[i] / N + 1;
+                xs[i] = order[i] % N + 1;
+            }
+        }
+    }
+
+    /**
+     * Grid with 59% of sites open, close to the percolation threshold.
+     */
+    @State(Scope.Thread)
+    public static class HalfOpen
+    {
+        @Param({ "100", "1000", "5000" })
+        int N;
+
+        Object percolation;
+        int[] ys, xs;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            percolation = Assignments.newPercolation(N);
+            ys = new int[N * N];
+            xs = new int[N * N];
+
+            int[] order = shuffled(N * N, 42);
+            for (int i = 0; i < order.length; i++) {
+                ys[i] = order[i] / N + 1;
+                xs[i] = order[i] % N + 1;
+
+                if (i < 0.59 * order.length) {
+                    Assignments.open(percolation, ys[i], xs[i]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void open(Opening s)
+    {
+        if (s.next == s.ys.length) {
+            s.percolation = Assignments.reset(s.percolation, s.N);
+            s.next = 0;
+        }
+
+        Assignments.open(s.percolation, s.ys[s.next], s.xs[s.next]);
+        s.next++;
+    }
+
+    @Benchmark
+    public boolean percolates(HalfOpen s)
+    {
+        return Assignments.percolates(s.percolation);
+    }
+
+    @Benchmark
+    public boolean isFull(HalfOpen s)
+    {
+        if (s.next == s.ys.length) {
+            s.next = 0;
+        }
+
+        boolean full = Assignments.isFull(s.percolation, s.ys[s.next], s.xs[s.next]);
+        s.next++;
+
+        return full;
+    }
+
+    static int[] shuffled(int n, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] a = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(n - i);
+            int t = a[j];
+            a[j] = a[i];
+            a[i] = t;
+        }
+
+        return a;
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Producers enqueueing and consumers dequeueing random items, striped
+ * ConcurrentRandomizedQueue against RandomizedQueue guarded by synchronized.
+ * Scale threads with -tg, e.g. -tg 8,8 and -tg 16,16.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class RandomizedQueueBenchmark
+{
+    private static final Object ITEM = new Object();
+
+    Object striped, plain;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+        striped = Assignments.newStripedQueue();
+        plain = Assignments.newRandomizedQueue();
+    }
+
+    @Benchmark
+    @Group("striped")
+    @GroupThreads(2)
+    public void stripedEnqueue()
+    {
+        Assignments.stripedEnqueue(striped, ITEM);
+    }
+
+    @Benchmark
+    @Group("striped")
+    @GroupThreads(2)
+    public Object stripedPoll()
+    {
+        return Assignments.stripedPoll(striped);
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(2)
+    public void synchronizedEnqueue()
+    {
+        synchronized (plain) {
+            Assignments.queueEnqueue(plain, ITEM);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(2)
+    public Object synchronizedPoll()
+    {
+        synchronized (plain) {
+            return Assignments.queueIsEmpty(plain) ? null : Assignments.queueDequeue(plain);
+        }
+    }
+}
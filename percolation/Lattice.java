@@ -0,0 +1,243 @@
+import java.util.SplittableRandom;
+
+/**
+ * Geometry of a percolation system: sites laid out row-major with a border of
+ * blocked sentinel sites, so every neighbour of a real site is a valid index
+ * and neighbours are found by adding precomputed offsets.
+ *
+ * Percolation runs from the first to the last row (2D) or layer (3D).
+ */
+public class Lattice
+{
+    private final int size, dims;
+    
+    // Padded row length and padded layer size.
+    private final int width, plane;
+    
+    // Total number of indices including sentinels.
+    private final int capacity;
+    
+    // Indices below topEnd lie in the top row, indices from bottomStart in the bottom row.
+    private final int topEnd, bottomStart;
+    
+    // Neighbour offsets, table is picked by index & parityMask.
+    private final int[][] offsets;
+    private final int parityMask;
+    
+    // Bitset of sentinel indices.
+    private final long[] sentinels;
+    
+    private Lattice(int N, int dims, int width, int[][] offsets)
+    {
+        if (N < 1) {
+            throw new IllegalArgumentException();
+        }
+        
+        this.size = N;
+        this.dims = dims;
+        this.width = width;
+        this.offsets = offsets;
+        parityMask = offsets.length - 1;
+        
+        if (dims == 2) {
+            plane = width * (size + 2);
+            capacity = plane;
+            topEnd = 2 * width;
+            bottomStart = size * width;
+        } else {
+            plane = width * width;
+            capacity = plane * (size + 2);
+            topEnd = 2 * plane;
+            bottomStart = size * plane;
+        }
+        
+        sentinels = new long[(capacity + 63) >>> 6];
+        for (int i = 0; i < capacity; i++) {
+            sentinels[i >>> 6] |= 1L << i;
+        }
+        for (int flat = 0; flat < sites(); flat++) {
+            int i = site(flat);
+            sentinels[i >>> 6] &= ~(1L << i);
+        }
+    }
+    
+    /**
+     * N-by-N square lattice, 4 neighbours.
+     */
+    public static Lattice square(int N)
+    {
+        int w = N + 2;
+        
+        return new Lattice(N, 2, w, new int[][] { { -w, w, -1, 1 } });
+    }
+    
+    /**
+     * N-by-N triangular lattice as square lattice with one diagonal, 6 neighbours.
+     */
+    public static Lattice triangular(int N)
+    {
+        int w = N + 2;
+        
+        return new Lattice(N, 2, w, new int[][] { { -w, w, -1, 1, -w - 1, w + 1 } });
+    }
+    
+    /**
+     * N-by-N hexagonal (honeycomb) lattice as brick wall, 3 neighbours.
+     * Site links up or down by parity of y + x. Row length is kept odd so that
+     * parity of the index equals parity of y + x.
+     */
+    public static Lattice hexagonal(int N)
+    {
+        int w = N % 2 == 1 ? N + 2 : N + 3;
+        
+        return new Lattice(N, 2, w, new int[][] { { -1, 1, -w }, { -1, 1, w } });
+    }
+    
+    /**
+     * N-by-N-by-N simple cubic lattice, 6 neighbours.
+     */
+    public static Lattice cubic(int N)
+    {
+        int w = N + 2;
+        
+        return new Lattice(N, 3, w, new int[][] { { -w * w, w * w, -w, w, -1, 1 } });
+    }
+    
+    /**
+     * Side length N.
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    public int dimensions()
+    {
+        return dims;
+    }
+    
+    /**
+     * Number of real sites, N^2 or N^3.
+     */
+    public int sites()
+    {
+        return dims == 2 ? size * size : size * size * size;
+    }
+    
+    /**
+     * Number of indices including sentinels, size of per-site arrays.
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+    
+    /**
+     * Index of 2D site at (y, x), both 1-based.
+     */
+    public int index(int y, int x)
+    {
+        if (dims != 2) {
+            throw new UnsupportedOperationException();
+        }
+        if (x < 1 || x > size || y < 1 || y > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        return y * width + x;
+    }
+    
+    /**
+     * Index of 3D site at (z, y, x), all 1-based.
+     */
+    public int index(int z, int y, int x)
+    {
+        if (dims != 3) {
+            throw new UnsupportedOperationException();
+        }
+        if (x < 1 || x > size || y < 1 || y > size || z < 1 || z > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        return z * plane + y * width + x;
+    }
+    
+    /**
+     * Index of site given by 0-based row-major position among real sites.
+     */
+    public int site(int flat)
+    {
+        int x = flat % size;
+        int rest = flat / size;
+        
+        if (dims == 2) {
+            return (rest + 1) * width + x + 1;
+        }
+        
+        return (rest / size + 1) * plane + (rest % size + 1) * width + x + 1;
+    }
+    
+    public boolean isSentinel(int i)
+    {
+        return i < 0 || i >= capacity || (sentinels[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    /**
+     * Neighbour offsets of index i.
+     */
+    int[] neighbours(int i)
+    {
+        return offsets[i & parityMask];
+    }
+    
+    /**
+     * 1 if i is in the top row, 0 otherwise, without branching.
+     */
+    int top(int i)
+    {
+        return (i - topEnd) >>> 31;
+    }
+    
+    /**
+     * 1 if i is in the bottom row, 0 otherwise, without branching.
+     */
+    int bottom(int i)
+    {
+        return (bottomStart - 1 - i) >>> 31;
+    }
+    
+    /**
+     * Estimate percolation threshold of every lattice.
+     * Usage: Lattice N T [seed]
+     */
+    public static void main(String[] args)
+    {
+        int N = Integer.parseInt(args[0]);
+        int T = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : StdRandom.getSeed();
+        
+        Lattice[] lattices = { square(N), triangular(N), hexagonal(N), cubic(N) };
+        String[] names = { "square", "triangular", "hexagonal", "cubic" };
+        
+        for (int l = 0; l < lattices.length; l++) {
+            Lattice lattice = lattices[l];
+            Percolation p = new Percolation(lattice);
+            ThresholdEstimator e = new ThresholdEstimator();
+            int[] sites = new int[lattice.sites()];
+            
+            for (int t = 0; t < T; t++) {
+                SplittableRandom random = PercolationStats.random(seed, t);
+                
+                for (int i = 0; i < sites.length; i++) {
+                    sites[i] = i;
+                }
+                PercolationStats.shuffle(sites, 0, sites.length, random);
+                
+                e.add((double) (p.openUntilPercolates(sites, 0, sites.length) + 1) / sites.length);
+                p.reset();
+            }
+            
+            StdOut.printf("%-10s  %.4f +- %.4f\n", names[l], e.mean(), e.width() / 2);
+        }
+    }
+}
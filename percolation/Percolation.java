@@ -1,151 +1,437 @@
+import java.util.Arrays;
+
 public class Percolation
 {
-    private final int size, TOP, BOTTOM;
-    private boolean[] sites;
-    private boolean[] fulls;
-    private WeightedQuickUnionUF uf;
+    // Flags kept in the state byte of a union-find root.
+    private static final int TOP = 1, BOTTOM = 2, FLAGS = TOP | BOTTOM;
+    
+    private final Lattice lattice;
+    
+    // Open state packed as bitset, one bit per site.
+    private long[] sites;
+    
+    // Union-find parent links, path compressed by splitting.
+    // Roots hold minus the size of their component.
+    private int[] parent;
+    
+    // Per root: connected to top/bottom flags.
+    private byte[] state;
+    
+    private boolean percolates;
+    
+    // Size of the largest open cluster.
+    private int largest;
+    
+    // Undo log since last checkpoint: site and old parent, ~site and old state,
+    // or ~site and -1 for an opened site.
+    private boolean journaling;
+    private int[] journalSite, journalOld;
+    private int journalSize;
+    private boolean checkpointPercolates;
+    private int checkpointLargest;
     
     public Percolation(int N)
     {
-        if (N < 1) {
-            throw new IllegalArgumentException();
-        }
-        
-        size = N;
+        this(Lattice.square(N));
+    }
+    
+    /**
+     * System on any lattice, e.g. triangular, hexagonal or cubic.
+     */
+    public Percolation(Lattice lattice)
+    {
+        this.lattice = lattice;
         
-        // All sites are blocked by default i.e. false.
-        sites = new boolean[size * size];
+        // All sites are blocked by default i.e. 0. Sentinels are never opened.
+        sites = new long[words(lattice.capacity())];
         
-        // 0 - root of top row and N^2+1 - root of bottom row.
-        uf = new WeightedQuickUnionUF(size * size + 2);
-        TOP = 0;
-        BOTTOM = size * size + 1;
+        parent = new int[lattice.capacity()];
+        Arrays.fill(parent, -1);
         
-        // Additional structure to fix backwash problem.
-        fulls = new boolean[size * size];
+        // Single structure replaces virtual top/bottom sites and fixes backwash.
+        state = new byte[lattice.capacity()];
     }
     
+    /**
+     * Open site at (y, x), both 1-based.
+     */
     public void open(int y, int x)
     {
-        if (isOpen(y, x)) {
-            return;
+        openIndex(lattice.index(y, x));
+    }
+    
+    /**
+     * Open site at padded lattice index i, see Lattice.index() and Lattice.site().
+     */
+    public void openIndex(int i)
+    {
+        if (lattice.isSentinel(i)) {
+            throw new IndexOutOfBoundsException();
         }
         
-        int i = xyTo1D(y, x);
-        boolean full = false;
-        
-        // Mark site as opened.
-        sites[i - 1] = true;
+        openSite(i);
+    }
+    
+    /**
+     * Open sites given by 0-based row-major positions flats[from..to),
+     * not padded lattice indices, see Lattice.site().
+     */
+    public void open(int[] flats, int from, int to)
+    {
+        int n = lattice.sites();
         
-        // Connect with root of top row.
-        if (y == 1) {
-            uf.union(TOP, i);
+        for (int k = from; k < to; k++) {
+            int flat = flats[k];
+            if (flat < 0 || flat >= n) {
+                throw new IndexOutOfBoundsException();
+            }
             
-            // Top sites always full.
-            full = true;
+            openSite(lattice.site(flat));
         }
+    }
+    
+    /**
+     * Open sites given by 0-based row-major positions flats[from..to) until system percolates,
+     * not padded lattice indices, see Lattice.site().
+     * Return position k of the site which made it percolate, -1 if range ran out first.
+     * Throws IllegalStateException if system percolates already, there is no such k.
+     */
+    public int openUntilPercolates(int[] flats, int from, int to)
+    {
+        int n = lattice.sites();
         
-        // Connect with root of bottom row.
-        if (y == size) {
-            uf.union(BOTTOM, i);
+        if (percolates) {
+            throw new IllegalStateException();
         }
         
-        // Make connections if possible with top, bottom, left, right sites.
-        if (isValidCoords(y - 1, x) && isOpen(y - 1, x)) {
-            uf.union(i, xyTo1D(y - 1, x));
-            
-            // Adjacent site is full, then current site is full as well. 
-            if (!full && isFull(y - 1, x)) {
-                full = true;
+        for (int k = from; k < to; k++) {
+            int flat = flats[k];
+            if (flat < 0 || flat >= n) {
+                throw new IndexOutOfBoundsException();
             }
-        }
-        if (isValidCoords(y + 1, x) && isOpen(y + 1, x)) {
-            uf.union(i, xyTo1D(y + 1, x));
             
-            if (!full && isFull(y + 1, x)) {
-                full = true;
+            openSite(lattice.site(flat));
+            if (percolates) {
+                return k;
             }
         }
-        if (isValidCoords(y, x - 1) && isOpen(y, x - 1)) {
-            uf.union(i, xyTo1D(y, x - 1));
-            
-            if (!full && isFull(y, x - 1)) {
-                full = true;
-            }
+        
+        return -1;
+    }
+    
+    /**
+     * Open site at index i, which must not be a sentinel.
+     */
+    private void openSite(int i)
+    {
+        if (get(sites, i)) {
+            return;
         }
-        if (isValidCoords(y, x + 1) && isOpen(y, x + 1)) {
-            uf.union(i, xyTo1D(y, x + 1));
-            
-            if (!full && isFull(y, x + 1)) {
-                full = true;
-            }
+        
+        // Mark site as opened.
+        set(sites, i);
+        if (journaling) {
+            log(~i, -1);
+        }
+        largest = Math.max(largest, 1);
+        
+        // Sites of top row are always full, sites of bottom row reach bottom.
+        setState(i, lattice.top(i) * TOP | lattice.bottom(i) * BOTTOM);
+        
+        // Make connections with open neighbours, sentinels are never open.
+        int[] offsets = lattice.neighbours(i);
+        for (int k = 0; k < offsets.length; k++) {
+            connect(i, i + offsets[k]);
         }
         
-        if (full) {
-            propagateFullness(y, x);
+        // Component of the new site touches both top and bottom rows.
+        if ((state[find(i)] & FLAGS) == FLAGS) {
+            percolates = true;
         }
     }
     
     /**
-     * Return state of site at (y, x).
+     * Return state of site at (y, x), both 1-based.
      */
     public boolean isOpen(int y, int x)
-    {        
-        return sites[xyTo1D(y, x) - 1];
+    {
+        return isOpenIndex(lattice.index(y, x));
+    }
+    
+    /**
+     * Return state of site at padded lattice index i, false for sentinels.
+     */
+    public boolean isOpenIndex(int i)
+    {
+        return !lattice.isSentinel(i) && get(sites, i);
     }
     
     /**
-     * If site at (y, x) connected with root of top row.
+     * If site at (y, x), both 1-based, connected with top row.
      */
     public boolean isFull(int y, int x)
-    {   
-        return fulls[xyTo1D(y, x) - 1];
+    {
+        return isFullIndex(lattice.index(y, x));
+    }
+    
+    /**
+     * If site at padded lattice index i connected with top row.
+     */
+    public boolean isFullIndex(int i)
+    {
+        return isOpenIndex(i) && (state[find(i)] & TOP) != 0;
     }
     
     /**
-     * Root of top row connected with root of bottom row?
+     * Top row connected with bottom row?
      */
     public boolean percolates()
     {
-        return uf.connected(TOP, BOTTOM);
+        return percolates;
     }
     
-    private boolean isValidCoords(int y, int x)
+    /**
+     * Block all sites again so instance can be reused for the next trial.
+     * Only opened sites are touched, found by scanning the bitset a word at a time.
+     */
+    public void reset()
     {
-        return x > 0 && x <= size && y > 0 && y <= size;
+        for (int w = 0; w < sites.length; w++) {
+            long word = sites[w];
+            
+            while (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                
+                // Closed sites never take part in unions, so their links are untouched.
+                parent[i] = -1;
+                state[i] = 0;
+                
+                word &= word - 1;
+            }
+            
+            sites[w] = 0;
+        }
+        
+        percolates = false;
+        largest = 0;
+        commit();
     }
     
-    private int xyTo1D(int y, int x)
+    /**
+     * Remember current state, later opens can be undone with rollback().
+     * Path compression is off until commit() so every change is a logged write.
+     */
+    public void checkpoint()
     {
-        if (!isValidCoords(y, x)) {
-            throw new IndexOutOfBoundsException();
+        if (journalSite == null) {
+            journalSite = new int[64];
+            journalOld = new int[64];
         }
         
-        return size * (y - 1) + x;
+        journaling = true;
+        journalSize = 0;
+        checkpointPercolates = percolates;
+        checkpointLargest = largest;
     }
     
-    private void propagateFullness(int y, int x)
-    {    
-        fulls[xyTo1D(y, x) - 1] = true; 
+    /**
+     * Undo all opens since last checkpoint, which stays in place.
+     */
+    public void rollback()
+    {
+        if (!journaling) {
+            throw new IllegalStateException();
+        }
         
-        // Propagate to the top.
-        if (isValidCoords(y - 1, x) && isOpen(y - 1, x) && !isFull(y - 1, x)) {
-            propagateFullness(y - 1, x);
+        while (journalSize > 0) {
+            int i = journalSite[--journalSize];
+            int old = journalOld[journalSize];
+            
+            if (i >= 0) {
+                parent[i] = old;
+            } else if (old >= 0) {
+                state[~i] = (byte) old;
+            } else {
+                clear(sites, ~i);
+            }
         }
         
-        // Propagate to the bottom.
-        if (isValidCoords(y + 1, x) && isOpen(y + 1, x) && !isFull(y + 1, x)) {
-            propagateFullness(y + 1, x);
+        percolates = checkpointPercolates;
+        largest = checkpointLargest;
+    }
+    
+    /**
+     * Keep all opens since last checkpoint and stop journaling.
+     */
+    public void commit()
+    {
+        journaling = false;
+        journalSize = 0;
+    }
+    
+    /**
+     * Number of sites in the largest cluster of open sites.
+     */
+    public int largestCluster()
+    {
+        return largest;
+    }
+    
+    /**
+     * Number of open sites in row y, counted a word at a time.
+     */
+    public int openSitesInRow(int y)
+    {
+        int from = lattice.index(y, 1);
+        
+        return count(sites, from, from + lattice.size());
+    }
+    
+    /**
+     * Number of open sites in the whole grid.
+     */
+    public int numberOfOpenSites()
+    {
+        return count(sites, 0, lattice.capacity());
+    }
+    
+    /**
+     * Union open site i with neighbour j if the latter is open as well.
+     */
+    private void connect(int i, int j)
+    {
+        if (get(sites, j)) {
+            union(i, j);
+        }
+    }
+    
+    /**
+     * Root of site i, pointing each site on the way up to its grandparent.
+     */
+    private int find(int i)
+    {
+        int p;
+        
+        if (journaling) {
+            while ((p = parent[i]) >= 0) {
+                i = p;
+            }
+            
+            return i;
+        }
+        
+        while ((p = parent[i]) >= 0) {
+            if (parent[p] >= 0) {
+                parent[i] = parent[p];
+            }
+            i = p;
+        }
+        
+        return i;
+    }
+    
+    /**
+     * Union by size, new root inherits flags of both components.
+     */
+    private void union(int i, int j)
+    {
+        int p = find(i);
+        int q = find(j);
+        
+        if (p == q) {
+            return;
+        }
+        
+        // Sizes are stored negated, so smaller value is larger component.
+        int n = parent[p] + parent[q];
+        int flags = (state[p] | state[q]) & FLAGS;
+        
+        if (parent[p] > parent[q]) {
+            setParent(p, q);
+            setParent(q, n);
+            setState(q, flags);
+        } else {
+            setParent(q, p);
+            setParent(p, n);
+            setState(p, flags);
+        }
+        
+        largest = Math.max(largest, -n);
+    }
+    
+    private void setParent(int i, int p)
+    {
+        if (journaling) {
+            log(i, parent[i]);
+        }
+        
+        parent[i] = p;
+    }
+    
+    private void setState(int i, int s)
+    {
+        if (journaling) {
+            log(~i, state[i]);
+        }
+        
+        state[i] = (byte) s;
+    }
+    
+    private void log(int i, int old)
+    {
+        if (journalSize == journalSite.length) {
+            journalSite = Arrays.copyOf(journalSite, journalSize * 2);
+            journalOld = Arrays.copyOf(journalOld, journalSize * 2);
+        }
+        
+        journalSite[journalSize] = i;
+        journalOld[journalSize++] = old;
+    }
+    
+    private static int words(int bits)
+    {
+        return (bits + 63) >>> 6;
+    }
+    
+    private static boolean get(long[] bits, int i)
+    {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    private static void set(long[] bits, int i)
+    {
+        bits[i >>> 6] |= 1L << i;
+    }
+    
+    private static void clear(long[] bits, int i)
+    {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+    
+    /**
+     * Population count of bits in [from, to).
+     */
+    private static int count(long[] bits, int from, int to)
+    {
+        if (from >= to) {
+            return 0;
         }
         
-        // Propagate to the left.
-        if (isValidCoords(y, x - 1) && isOpen(y, x - 1) && !isFull(y, x - 1)) {
-            propagateFullness(y, x - 1);
+        int first = from >>> 6, last = (to - 1) >>> 6;
+        
+        // Masks for partial first and last words, shifts are taken mod 64.
+        long head = -1L << from;
+        long tail = -1L >>> -to;
+        
+        if (first == last) {
+            return Long.bitCount(bits[first] & head & tail);
         }
         
-        // Propagate to the right.
-        if (isValidCoords(y, x + 1) && isOpen(y, x + 1) && !isFull(y, x + 1)) {
-            propagateFullness(y, x + 1);
+        int n = Long.bitCount(bits[first] & head) + Long.bitCount(bits[last] & tail);
+        for (int w = first + 1; w < last; w++) {
+            n += Long.bitCount(bits[w]);
         }
+        
+        return n;
     }
 }
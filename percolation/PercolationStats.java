@@ -1,9 +1,49 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class PercolationStats
 {
+    // Spread trials over the common fork/join pool.
+    public static final int PARALLEL = 1;
+    
+    // Check percolation at batch boundaries only, see batchedTrial().
+    public static final int BATCHED = 2;
+    
+    // Increment of SplittableRandom, trial i gets the i-th output of the seed's stream.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    
+    // Open-ended runs need at least this many trials before checking precision.
+    private static final int MIN_TRIALS = 10;
+    
     private final int size;
+    private final long seed;
+    private final boolean batched;
     private double[] results;
+    private final ThresholdEstimator estimator;
+    
+    // Optional log of finished trials, done[i] is set for trials found in it.
+    private TrialLog log;
+    private boolean[] done;
     
     public PercolationStats(int N, int T)
+    {
+        this(N, T, StdRandom.getSeed(), 0);
+    }
+    
+    /**
+     * Results depend on seed only, whether trials run in parallel or not.
+     */
+    public PercolationStats(int N, int T, long seed, int flags)
+    {
+        this(N, T, seed, flags, null);
+    }
+    
+    /**
+     * Stream every result to the log at given path. If log holds trials of
+     * an interrupted run with same N, T and seed, only missing trials are run.
+     */
+    public PercolationStats(int N, int T, long seed, int flags, String path)
     {
         if (N < 1 || T < 1) {
             throw new IllegalArgumentException();
@@ -11,77 +51,300 @@ public class PercolationStats
         
         size = N;
         results = new double[T];
+        estimator = new ThresholdEstimator();
+        this.seed = seed;
+        batched = (flags & BATCHED) != 0;
+        
+        if (path != null) {
+            log = new TrialLog(path, N, T, seed);
+            done = new boolean[T];
+            
+            for (int k = 0; k < log.count(); k++) {
+                results[log.trial(k)] = log.result(k);
+                done[log.trial(k)] = true;
+            }
+        }
+        
+        if ((flags & PARALLEL) != 0) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            
+            // A few leaves per worker to balance uneven trial lengths.
+            int grain = Math.max(1, T / (4 * pool.getParallelism()));
+            pool.invoke(new Trials(0, T, grain));
+        } else {
+            run(0, T);
+        }
+        
+        if (log != null) {
+            log.flush();
+        }
         
-        run();
+        // Combine in trial order, so sums do not depend on scheduling or restarts.
+        for (double result : results) {
+            estimator.add(result);
+        }
+    }
+    
+    /**
+     * Run trials until 95% confidence interval is narrower than width or time budget runs out.
+     */
+    public PercolationStats(int N, double width, long millis, long seed)
+    {
+        this(N, new ThresholdEstimator(), width, millis, seed);
     }
     
     /**
-     * Run Monte Carlo simulation.
+     * Open-ended run feeding given estimator, which may be queried by other threads meanwhile.
      */
-    private void run()
-    {   
-        int opened, y, x;
+    public PercolationStats(int N, ThresholdEstimator estimator, double width, long millis, long seed)
+    {
+        if (N < 1 || width <= 0 || millis < 0 || estimator == null) {
+            throw new IllegalArgumentException();
+        }
+        
+        size = N;
+        this.estimator = estimator;
+        this.seed = seed;
+        batched = false;
+        
         int[] sites = new int[size * size];
-        Percolation p;
+        Percolation p = new Percolation(size);
+        long deadline = System.currentTimeMillis() + millis;
         
-        for (int i = 0; i < sites.length; i++) {
-            sites[i] = i + 1;
+        for (int i = 0; i < MIN_TRIALS || estimator.width() > width; i++) {
+            if (i > 0 && System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            
+            estimator.add(trial(i, sites, p));
+            p.reset();
         }
+    }
+    
+    /**
+     * Run Monte Carlo simulation for trials [lo, hi) with one shuffle buffer and grid.
+     */
+    private void run(int lo, int hi)
+    {
+        int[] sites = new int[size * size];
+        Percolation p = new Percolation(size);
         
-        for (int i = 0; i < results.length; i++) {
-            p = new Percolation(size);
-            opened = 0; // Maintain the amount of open sites.
+        for (int i = lo; i < hi; i++) {
+            if (done != null && done[i]) {
+                continue;
+            }
             
-            // Shuffle sites before each simulation.
-            StdRandom.shuffle(sites);
+            results[i] = batched ? batchedTrial(i, sites, p) : trial(i, sites, p);
+            p.reset();
             
-            do {
-                // Select random (y, x) site.
-                x = sites[opened] % size;
-                y = sites[opened] / size;
-                if (x == 0) {
-                    x = size; // Do not need to increase Y.
-                } else {
-                    y++; // Increae Y by 1 as division was with remainder.
-                }
-                
-                opened++;
-                p.open(y, x);
-            } while (!p.percolates());
+            if (log != null) {
+                log.append(i, results[i]);
+            }
+        }
+    }
+    
+    /**
+     * Open random sites until system percolates, return percolation threshold.
+     */
+    private double trial(int trial, int[] sites, Percolation p)
+    {
+        int lo = 0, k = -1;
+        SplittableRandom random = start(trial, sites);
+        
+        // Shuffle lazily a row's worth of sites at a time, only as far as they are opened.
+        while (k < 0) {
+            int hi = Math.min(sites.length, lo + size);
+            shuffle(sites, lo, hi, random);
+            k = p.openUntilPercolates(sites, lo, hi);
+            lo = hi;
+        }
+        
+        return (double) (k + 1) / (size * size); // Percolation threshold.
+    }
+    
+    /**
+     * Same threshold as trial(), but checks percolation only O(log N) times.
+     * Opens sites in batches of doubling size, then binary searches the batch
+     * which percolated by rolling back to the checkpoint taken before it.
+     */
+    private double batchedTrial(int trial, int[] sites, Percolation p)
+    {
+        int lo = 0, hi = 0, batch = 1;
+        SplittableRandom random = start(trial, sites);
+        
+        // First lo sites do not percolate, first hi sites do.
+        p.checkpoint();
+        while (true) {
+            hi = Math.min(sites.length, lo + batch);
+            shuffle(sites, lo, hi, random);
+            p.open(sites, lo, hi);
+            
+            if (p.percolates()) {
+                break;
+            }
+            
+            p.checkpoint();
+            lo = hi;
+            batch *= 2;
+        }
+        
+        // Replay halves of the last batch, order of sites is already fixed.
+        p.rollback();
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            p.open(sites, lo, mid);
             
-            results[i] = (double) opened / (size * size); // Percolation threshold.
+            if (p.percolates()) {
+                p.rollback();
+                hi = mid;
+            } else {
+                p.checkpoint();
+                lo = mid;
+            }
+        }
+        p.commit();
+        
+        return (double) hi / (size * size); // Percolation threshold.
+    }
+    
+    /**
+     * Same starting order for every trial keeps results reproducible.
+     */
+    private SplittableRandom start(int trial, int[] sites)
+    {
+        for (int i = 0; i < sites.length; i++) {
+            sites[i] = i;
+        }
+        
+        return random(seed, trial);
+    }
+    
+    /**
+     * Fisher-Yates step for positions [lo, hi). Shuffling consecutive ranges gives
+     * the same order as shuffling the whole array at once.
+     */
+    static void shuffle(int[] sites, int lo, int hi, SplittableRandom random)
+    {
+        for (int i = lo; i < hi; i++) {
+            int j = i + random.nextInt(sites.length - i);
+            int site = sites[j];
+            sites[j] = sites[i];
+            sites[i] = site;
         }
     }
     
+    /**
+     * Independent random stream of given trial, same as i-th nextLong() of SplittableRandom(seed).
+     */
+    static SplittableRandom random(long seed, int trial)
+    {
+        long z = seed + (trial + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+    
+    /**
+     * Number of trials run.
+     */
+    public int trials()
+    {
+        return estimator.count();
+    }
+    
     public double mean()
     {
-        return StdStats.mean(results);
+        return estimator.mean();
     }
     
     public double stddev()
     {
-        return StdStats.stddev(results);
+        return estimator.stddev();
     }
-
+    
     public double confidenceLo()
     {
-        return mean() - (1.96 * stddev() / Math.sqrt(results.length));
+        return estimator.confidenceLo();
     }
     
     public double confidenceHi()
     {
-        return mean() + (1.96 * stddev() / Math.sqrt(results.length));
+        return estimator.confidenceHi();
     }
     
+    /**
+     * Usage: PercolationStats N T [seed [parallel|batched|log=file ...]]
+     *        PercolationStats N width=W millis=M [seed]
+     */
     public static void main(String[] args)
     {
         int N = Integer.parseInt(args[0]);
-        int T = Integer.parseInt(args[1]);
+        PercolationStats stats;
         
-        PercolationStats stats = new PercolationStats(N, T);
+        if (args[1].startsWith("width=")) {
+            double width = Double.parseDouble(args[1].substring(6));
+            long millis = -1;
+            long seed = StdRandom.getSeed();
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].startsWith("millis=")) {
+                    millis = Long.parseLong(args[i].substring(7));
+                } else {
+                    seed = Long.parseLong(args[i]);
+                }
+            }
+            if (millis < 0) {
+                throw new IllegalArgumentException("Open-ended run needs millis=M");
+            }
+            
+            stats = new PercolationStats(N, width, millis, seed);
+        } else {
+            int T = Integer.parseInt(args[1]);
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : StdRandom.getSeed();
+            int flags = 0;
+            String path = null;
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equals("parallel")) {
+                    flags |= PARALLEL;
+                } else if (args[i].equals("batched")) {
+                    flags |= BATCHED;
+                } else if (args[i].startsWith("log=")) {
+                    path = args[i].substring(4);
+                }
+            }
+            
+            stats = new PercolationStats(N, T, seed, flags, path);
+        }
         
+        StdOut.println("trials                  = " + stats.trials());
         StdOut.println("mean                    = " + stats.mean());
         StdOut.println("stddev                  = " + stats.stddev());
         StdOut.println("95% confidence interval = " + stats.confidenceLo() + ", " + stats.confidenceHi());
     }
+    
+    /**
+     * Splits trial range in halves down to grain, each leaf owns its shuffle buffer and grid.
+     */
+    private class Trials extends RecursiveAction
+    {
+        private final int lo, hi, grain;
+        
+        public Trials(int lo, int hi, int grain)
+        {
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+        
+        protected void compute()
+        {
+            if (hi - lo <= grain) {
+                run(lo, hi);
+                return;
+            }
+            
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Trials(lo, mid, grain), new Trials(mid, hi, grain));
+        }
+    }
 }
@@ -0,0 +1,119 @@
+import java.util.SplittableRandom;
+
+/**
+ * Newman-Ziff sweep: every trial opens all N^2 sites in random order and records
+ * observables at each occupation level, giving the whole percolation curve.
+ */
+public class PercolationSweep
+{
+    private final int size, bins, trials;
+    
+    // Per bin: number of trials which percolated, sum of largest cluster fractions.
+    private final int[] percolated;
+    private final double[] largest;
+    
+    /**
+     * Sweep T trials and aggregate observables into histogram of given resolution.
+     */
+    public PercolationSweep(int N, int T, int bins, long seed)
+    {
+        if (N < 1 || T < 1 || bins < 1) {
+            throw new IllegalArgumentException();
+        }
+        
+        size = N;
+        trials = T;
+        this.bins = bins;
+        percolated = new int[bins + 1];
+        largest = new double[bins + 1];
+        
+        int[] sites = new int[size * size];
+        Percolation p = new Percolation(size);
+        
+        for (int i = 0; i < trials; i++) {
+            sweep(i, seed, sites, p);
+            p.reset();
+        }
+    }
+    
+    /**
+     * One O(N^2) pass, bin b is sampled once level(b) sites are open.
+     */
+    private void sweep(int trial, long seed, int[] sites, Percolation p)
+    {
+        SplittableRandom random = PercolationStats.random(seed, trial);
+        
+        for (int i = 0; i < sites.length; i++) {
+            sites[i] = i;
+        }
+        
+        // Open sites in bulk from one sampled level to the next.
+        for (int b = 0, opened = 0; b <= bins; b++) {
+            int level = level(b);
+            
+            PercolationStats.shuffle(sites, opened, level, random);
+            p.open(sites, opened, level);
+            opened = level;
+            
+            if (p.percolates()) {
+                percolated[b]++;
+            }
+            largest[b] += (double) p.largestCluster() / sites.length;
+        }
+    }
+    
+    /**
+     * Number of open sites at which bin b is sampled.
+     */
+    private int level(int b)
+    {
+        return (int) Math.round((double) b * size * size / bins);
+    }
+    
+    public int bins()
+    {
+        return bins;
+    }
+    
+    /**
+     * Fraction of open sites of bin b.
+     */
+    public double fraction(int b)
+    {
+        return (double) level(b) / (size * size);
+    }
+    
+    /**
+     * Probability system percolates at bin b.
+     */
+    public double percolates(int b)
+    {
+        return (double) percolated[b] / trials;
+    }
+    
+    /**
+     * Mean size of largest cluster at bin b, as fraction of all sites.
+     */
+    public double largestCluster(int b)
+    {
+        return largest[b] / trials;
+    }
+    
+    /**
+     * Usage: PercolationSweep N T bins [seed]
+     */
+    public static void main(String[] args)
+    {
+        int N = Integer.parseInt(args[0]);
+        int T = Integer.parseInt(args[1]);
+        int bins = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : StdRandom.getSeed();
+        
+        PercolationSweep sweep = new PercolationSweep(N, T, bins, seed);
+        
+        StdOut.println("fraction  percolates  largest");
+        for (int b = 0; b <= sweep.bins(); b++) {
+            StdOut.printf("%8.4f  %10.4f  %7.4f\n", sweep.fraction(b), sweep.percolates(b), sweep.largestCluster(b));
+        }
+    }
+}
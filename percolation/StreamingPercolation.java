@@ -0,0 +1,199 @@
+import java.util.SplittableRandom;
+
+/**
+ * Percolation check of a grid read row by row, Hoshen-Kopelman style.
+ * Only labels of the previous row and an O(N) equivalence table are kept,
+ * so grids far too large for Percolation can be tested.
+ */
+public class StreamingPercolation
+{
+    private final int size;
+    private int rows;
+    
+    // Label of every open site in the previous row, -1 for blocked sites.
+    private int[] labels;
+    
+    // Whether component of label is connected to the top row.
+    private boolean[] top;
+    
+    // Union-find over previous row labels [0, N) and current row sites [N, 2N).
+    private int[] parent;
+    private boolean[] flag;
+    
+    // Scratch buffers of the current row, swapped in as previous row when it is done.
+    private int[] nextLabels;
+    private boolean[] nextTop;
+    private int[] rootLabel;
+    
+    // Any open site of the last row connected to the top?
+    private boolean alive = true;
+    
+    public StreamingPercolation(int N)
+    {
+        if (N < 1) {
+            throw new IllegalArgumentException();
+        }
+        
+        size = N;
+        labels = new int[size];
+        top = new boolean[size];
+        nextLabels = new int[size];
+        nextTop = new boolean[size];
+        parent = new int[2 * size];
+        flag = new boolean[2 * size];
+        rootLabel = new int[2 * size];
+        
+        // Virtual row above the grid: one open component connected to the top.
+        for (int x = 0; x < size; x++) {
+            labels[x] = 0;
+        }
+        top[0] = true;
+    }
+    
+    /**
+     * Add next row, open[x] tells whether site at column x is open.
+     */
+    public void addRow(boolean[] open)
+    {
+        if (open.length != size) {
+            throw new IllegalArgumentException();
+        }
+        if (rows == size) {
+            throw new IllegalStateException();
+        }
+        
+        rows++;
+        
+        // No site connected to the top any more, nothing below can become full.
+        if (!alive) {
+            return;
+        }
+        
+        for (int i = 0; i < 2 * size; i++) {
+            parent[i] = i;
+            flag[i] = i < size && top[i];
+            rootLabel[i] = -1;
+        }
+        
+        for (int x = 0; x < size; x++) {
+            if (!open[x]) {
+                continue;
+            }
+            
+            // Join with site above and site to the left.
+            if (labels[x] >= 0) {
+                union(size + x, labels[x]);
+            }
+            if (x > 0 && open[x - 1]) {
+                union(size + x, size + x - 1);
+            }
+        }
+        
+        // Relabel current row with compact labels of its components.
+        int next = 0;
+        alive = false;
+        for (int x = 0; x < size; x++) {
+            nextLabels[x] = -1;
+            
+            if (!open[x]) {
+                continue;
+            }
+            
+            int root = find(size + x);
+            if (rootLabel[root] < 0) {
+                rootLabel[root] = next;
+                nextTop[next++] = flag[root];
+            }
+            nextLabels[x] = rootLabel[root];
+            
+            if (flag[root]) {
+                alive = true;
+            }
+        }
+        
+        int[] labelsSwap = labels;
+        labels = nextLabels;
+        nextLabels = labelsSwap;
+        
+        boolean[] topSwap = top;
+        top = nextTop;
+        nextTop = topSwap;
+    }
+    
+    /**
+     * Whether all N rows were added and an open site of the last row is connected to the top.
+     */
+    public boolean percolates()
+    {
+        return rows == size && alive;
+    }
+    
+    /**
+     * Whether grid can still percolate with rows added so far.
+     */
+    public boolean isAlive()
+    {
+        return alive;
+    }
+    
+    private int find(int i)
+    {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        
+        return i;
+    }
+    
+    private void union(int i, int j)
+    {
+        int p = find(i);
+        int q = find(j);
+        
+        if (p != q) {
+            parent[p] = q;
+            flag[q] |= flag[p];
+        }
+    }
+    
+    /**
+     * Usage: StreamingPercolation file        (N, then N rows of N 0/1 values)
+     *        StreamingPercolation N p [seed]  (random rows, site open with probability p)
+     */
+    public static void main(String[] args)
+    {
+        StreamingPercolation sp;
+        
+        if (args.length == 1) {
+            In in = new In(args[0]);
+            int N = in.readInt();
+            boolean[] row = new boolean[N];
+            
+            sp = new StreamingPercolation(N);
+            for (int y = 0; y < N; y++) {
+                for (int x = 0; x < N; x++) {
+                    row[x] = in.readInt() == 1;
+                }
+                sp.addRow(row);
+            }
+        } else {
+            int N = Integer.parseInt(args[0]);
+            double p = Double.parseDouble(args[1]);
+            SplittableRandom random = args.length > 2
+                ? new SplittableRandom(Long.parseLong(args[2]))
+                : new SplittableRandom(StdRandom.getSeed());
+            boolean[] row = new boolean[N];
+            
+            sp = new StreamingPercolation(N);
+            for (int y = 0; y < N && sp.isAlive(); y++) {
+                for (int x = 0; x < N; x++) {
+                    row[x] = random.nextDouble() < p;
+                }
+                sp.addRow(row);
+            }
+        }
+        
+        StdOut.println("percolates = " + sp.percolates());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Streaming mean and variance of trial results (Welford's method).
+ * Safe to query from another thread while trials are still being added.
+ */
+public class ThresholdEstimator
+{
+    private int count;
+    private double mean;
+    
+    // Sum of squared differences from the current mean.
+    private double m2;
+    
+    public synchronized void add(double x)
+    {
+        count++;
+        
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+    }
+    
+    public synchronized int count()
+    {
+        return count;
+    }
+    
+    public synchronized double mean()
+    {
+        return count > 0 ? mean : Double.NaN;
+    }
+    
+    /**
+     * Sample standard deviation, undefined for less than two results.
+     */
+    public synchronized double stddev()
+    {
+        return count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN;
+    }
+    
+    public synchronized double confidenceLo()
+    {
+        return mean() - halfWidth();
+    }
+    
+    public synchronized double confidenceHi()
+    {
+        return mean() + halfWidth();
+    }
+    
+    /**
+     * Width of the 95% confidence interval.
+     */
+    public synchronized double width()
+    {
+        return 2 * halfWidth();
+    }
+    
+    private double halfWidth()
+    {
+        return 1.96 * stddev() / Math.sqrt(count);
+    }
+    
+    public static void main(String[] args)
+    {
+        ThresholdEstimator e = new ThresholdEstimator();
+        double[] xs = { 0.59, 0.61, 0.58, 0.60, 0.62 };
+        
+        for (double x : xs) {
+            e.add(x);
+        }
+        
+        StdOut.println("Count is 5:          " + (e.count() == 5));
+        StdOut.println("Mean matches:        " + (Math.abs(e.mean() - StdStats.mean(xs)) < 1e-12));
+        StdOut.println("Stddev matches:      " + (Math.abs(e.stddev() - StdStats.stddev(xs)) < 1e-12));
+        StdOut.println("95% interval:        " + e.confidenceLo() + ", " + e.confidenceHi());
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only, memory-mapped log of trial results, so killed runs can resume.
+ *
+ * Header: magic, N, T, seed, number of records.
+ * Record: trial index, result. Records are in completion order.
+ */
+public class TrialLog
+{
+    private static final int MAGIC = 0x50455243; // "PERC"
+    
+    private static final int N_AT = 4, T_AT = 8, SEED_AT = 12, COUNT_AT = 20;
+    private static final int HEADER = 24, RECORD = 12;
+    
+    private final int trials;
+    private final MappedByteBuffer buffer;
+    private int count;
+    
+    /**
+     * Open log of run (N, T, seed) at path, create it if there is none.
+     */
+    public TrialLog(String path, int N, int T, long seed)
+    {
+        if (N < 1 || T < 1 || T > (Integer.MAX_VALUE - HEADER) / RECORD) {
+            throw new IllegalArgumentException();
+        }
+        
+        trials = T;
+        
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            boolean created = file.length() == 0;
+            long length = HEADER + (long) T * RECORD;
+            
+            if (!created && file.length() != length) {
+                throw new IllegalArgumentException("Log " + path + " belongs to another run");
+            }
+            
+            // Mapping stays valid after the channel is closed.
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            
+            if (created) {
+                buffer.putInt(0, MAGIC).putInt(N_AT, N).putInt(T_AT, T).putLong(SEED_AT, seed).putInt(COUNT_AT, 0);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(N_AT) != N
+                || buffer.getInt(T_AT) != T || buffer.getLong(SEED_AT) != seed) {
+                throw new IllegalArgumentException("Log " + path + " belongs to another run");
+            }
+            
+            count = buffer.getInt(COUNT_AT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    public int count()
+    {
+        return count;
+    }
+    
+    /**
+     * Trial index of k-th record.
+     */
+    public int trial(int k)
+    {
+        return buffer.getInt(HEADER + k * RECORD);
+    }
+    
+    /**
+     * Result of k-th record.
+     */
+    public double result(int k)
+    {
+        return buffer.getDouble(HEADER + k * RECORD + 4);
+    }
+    
+    /**
+     * Record is written before the count, so a killed run never counts a torn record.
+     */
+    public synchronized void append(int trial, double result)
+    {
+        if (count == trials) {
+            throw new IllegalStateException();
+        }
+        
+        buffer.putInt(HEADER + count * RECORD, trial).putDouble(HEADER + count * RECORD + 4, result);
+        buffer.putInt(COUNT_AT, ++count);
+    }
+    
+    /**
+     * Flush mapped pages to disk.
+     */
+    public synchronized void flush()
+    {
+        buffer.force();
+    }
+    
+    /**
+     * Statistics of all logged results, streamed from the mapped file instead of the heap.
+     */
+    public static ThresholdEstimator aggregate(String path)
+    {
+        ThresholdEstimator estimator = new ThresholdEstimator();
+        
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("Not a trial log: " + path);
+            }
+            
+            int n = buffer.getInt(COUNT_AT);
+            for (int k = 0; k < n; k++) {
+                estimator.add(buffer.getDouble(HEADER + k * RECORD + 4));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        return estimator;
+    }
+    
+    /**
+     * Usage: TrialLog file
+     */
+    public static void main(String[] args)
+    {
+        ThresholdEstimator e = aggregate(args[0]);
+        
+        StdOut.println("trials                  = " + e.count());
+        StdOut.println("mean                    = " + e.mean());
+        StdOut.println("stddev                  = " + e.stddev());
+        StdOut.println("95% confidence interval = " + e.confidenceLo() + ", " + e.confidenceHi());
+    }
+}
@@ -0,0 +1,536 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deque of bounded capacity for producer/consumer pipelines. Producers wait
+ * while it is full and consumers while it is empty, so a fast stage cannot
+ * run ahead of a slow one by more than the capacity.
+ *
+ * Waiting threads are parked on conditions of a ReentrantLock, never spin and
+ * do not pin the carrier thread of a virtual thread the way synchronized does.
+ * Peak depth and the number and duration of waits are recorded for tuning.
+ *
+ * Items live in a ring allocated once at full capacity, so a pipeline that
+ * keeps filling and emptying it never resizes.
+ */
+public class BoundedBlockingDeque<Item>
+{
+    private final Item[] items;
+    private final int capacity;
+
+    // Ring of items[head..head + size), wrapping around the end, guarded by lock.
+    private int head;
+    private int size;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Largest size so far, written under lock.
+    private volatile int peak;
+
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder producerWaitNanos = new LongAdder();
+    private final LongAdder consumerWaits = new LongAdder();
+    private final LongAdder consumerWaitNanos = new LongAdder();
+
+    public BoundedBlockingDeque(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.capacity = capacity;
+        items = (Item[]) new Object[capacity];
+    }
+
+    /**
+     * Fast producers and one slow batch consumer through a small deque.
+     * Every item must arrive exactly once and the deque must never overflow.
+     *
+     * Usage: BoundedBlockingDeque [producers [items per producer [capacity]]]
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        final int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        final int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        final int total = producers * count;
+
+        final BoundedBlockingDeque<Integer> deque = new BoundedBlockingDeque<Integer>(capacity);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[producers];
+
+        for (int t = 0; t < producers; t++) {
+            final int producer = t;
+
+            workers[t] = new Thread(new Runnable() {
+                public void run()
+                {
+                    try {
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            if (i % 2 == 0) {
+                                deque.putLast(producer * count + i);
+                            } else {
+                                deque.putFirst(producer * count + i);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+
+        Integer[] batch = new Integer[capacity / 2 + 1];
+        for (int received = 0; received < total; ) {
+            int n = deque.drainTo(batch, batch.length, 1, TimeUnit.SECONDS);
+            for (int i = 0; i < n; i++) {
+                seen.incrementAndGet(batch[i]);
+            }
+            received += n;
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int once = 0;
+        for (int i = 0; i < total; i++) {
+            if (seen.get(i) == 1) {
+                once++;
+            }
+        }
+
+        StdOut.println("Every item arrived once:  " + (once == total));
+        StdOut.println("Never above capacity:     " + (deque.peakSize() <= capacity));
+        StdOut.println("Empty poll times out:     " + (deque.pollFirst(10, TimeUnit.MILLISECONDS) == null));
+
+        // Tiny timeouts make awaitNanos return every small negative remainder.
+        boolean returned = true;
+        for (int i = 0; i < 100000; i++) {
+            returned &= deque.pollLast(1, TimeUnit.NANOSECONDS) == null;
+        }
+
+        StdOut.println("Tiny timeouts return:     " + returned);
+
+        for (int i = 0; i < capacity; i++) {
+            deque.offerLast(i);
+        }
+
+        StdOut.println("Full offer fails:         " + !deque.offerFirst(-1));
+        StdOut.println("Full offer times out:     " + !deque.offerLast(-1, 10, TimeUnit.MILLISECONDS));
+
+        // Small odd capacity, so both ends wrap around the ring.
+        BoundedBlockingDeque<Integer> ring = new BoundedBlockingDeque<Integer>(3);
+        boolean ordered = true;
+        for (int i = 0; i < 10; i++) {
+            ring.offerLast(i);
+            ring.offerFirst(-i);
+            ordered &= ring.pollLast() == i;
+            ring.offerLast(i + 1);
+            Integer[] out = new Integer[3];
+            ordered &= ring.drainTo(out, 3) == 2 && out[0] == -i && out[1] == i + 1 && ring.isEmpty();
+        }
+
+        StdOut.println("Ring wraps in order:      " + ordered);
+        StdOut.println("Producer waits:           " + deque.producerWaits()
+            + " (" + deque.producerWaitNanos() / 1000000 + " ms)");
+        StdOut.println("Consumer waits:           " + deque.consumerWaits()
+            + " (" + deque.consumerWaitNanos() / 1000000 + " ms)");
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    public int size()
+    {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Add item at the front if there is room, false if deque is full.
+     */
+    public boolean offerFirst(Item item)
+    {
+        return offerNow(item, true);
+    }
+
+    /**
+     * Add item at the end if there is room, false if deque is full.
+     */
+    public boolean offerLast(Item item)
+    {
+        return offerNow(item, false);
+    }
+
+    /**
+     * Add item at the front, waiting up to timeout for room. False if there was none.
+     */
+    public boolean offerFirst(Item item, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return offer(item, true, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Add item at the end, waiting up to timeout for room. False if there was none.
+     */
+    public boolean offerLast(Item item, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return offer(item, false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Add item at the front, waiting as long as deque is full.
+     */
+    public void putFirst(Item item) throws InterruptedException
+    {
+        offer(item, true, false, 0);
+    }
+
+    /**
+     * Add item at the end, waiting as long as deque is full.
+     */
+    public void putLast(Item item) throws InterruptedException
+    {
+        offer(item, false, false, 0);
+    }
+
+    /**
+     * Remove first item, null if deque is empty.
+     */
+    public Item pollFirst()
+    {
+        return pollNow(true);
+    }
+
+    /**
+     * Remove last item, null if deque is empty.
+     */
+    public Item pollLast()
+    {
+        return pollNow(false);
+    }
+
+    /**
+     * Remove first item, waiting up to timeout for one. Null if there was none.
+     */
+    public Item pollFirst(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return poll(true, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Remove last item, waiting up to timeout for one. Null if there was none.
+     */
+    public Item pollLast(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return poll(false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Remove first item, waiting as long as deque is empty.
+     */
+    public Item takeFirst() throws InterruptedException
+    {
+        return poll(true, false, 0);
+    }
+
+    /**
+     * Remove last item, waiting as long as deque is empty.
+     */
+    public Item takeLast() throws InterruptedException
+    {
+        return poll(false, false, 0);
+    }
+
+    /**
+     * Remove up to max items from the front into dst[0..) in one go, without
+     * waiting. Returns number of items removed.
+     */
+    public int drainTo(Item[] dst, int max)
+    {
+        lock.lock();
+        try {
+            return drain(dst, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like drainTo(dst, max), but waits up to timeout while deque is empty.
+     */
+    public int drainTo(Item[] dst, int max, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try {
+            if (!awaitItem(true, unit.toNanos(timeout))) {
+                return 0;
+            }
+
+            return drain(dst, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Largest number of items held at once so far.
+     */
+    public int peakSize()
+    {
+        return peak;
+    }
+
+    /**
+     * Number of times a producer waited for room.
+     */
+    public long producerWaits()
+    {
+        return producerWaits.sum();
+    }
+
+    /**
+     * Total time producers spent waiting for room.
+     */
+    public long producerWaitNanos()
+    {
+        return producerWaitNanos.sum();
+    }
+
+    /**
+     * Number of times a consumer waited for an item.
+     */
+    public long consumerWaits()
+    {
+        return consumerWaits.sum();
+    }
+
+    /**
+     * Total time consumers spent waiting for items.
+     */
+    public long consumerWaitNanos()
+    {
+        return consumerWaitNanos.sum();
+    }
+
+    private boolean offerNow(Item item, boolean first)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        lock.lock();
+        try {
+            if (size == capacity) {
+                return false;
+            }
+
+            insert(item, first);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean offer(Item item, boolean first, boolean timed, long nanos) throws InterruptedException
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        lock.lockInterruptibly();
+        try {
+            if (!awaitRoom(timed, nanos)) {
+                return false;
+            }
+
+            insert(item, first);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Item pollNow(boolean first)
+    {
+        lock.lock();
+        try {
+            return size == 0 ? null : remove(first);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Item poll(boolean first, boolean timed, long nanos) throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try {
+            return awaitItem(timed, nanos) ? remove(first) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add item, lock is held and there is room.
+     */
+    private void insert(Item item, boolean first)
+    {
+        if (first) {
+            head = head == 0 ? capacity - 1 : head - 1;
+            items[head] = item;
+        } else {
+            items[wrap(head + size)] = item;
+        }
+        size++;
+
+        if (size > peak) {
+            peak = size;
+        }
+
+        notEmpty.signal();
+    }
+
+    /**
+     * Remove item, lock is held and deque is not empty.
+     */
+    private Item remove(boolean first)
+    {
+        int i = first ? head : wrap(head + size - 1);
+        Item item = items[i];
+
+        // Avoid loitering.
+        items[i] = null;
+        if (first) {
+            head = wrap(head + 1);
+        }
+        size--;
+
+        notFull.signal();
+
+        return item;
+    }
+
+    /**
+     * Drain with lock held, wake as many producers as there is new room.
+     */
+    private int drain(Item[] dst, int max)
+    {
+        if (max < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = Math.min(size, Math.min(max, dst.length));
+        int chunk = Math.min(n, capacity - head);
+
+        System.arraycopy(items, head, dst, 0, chunk);
+        System.arraycopy(items, 0, dst, chunk, n - chunk);
+
+        Arrays.fill(items, head, head + chunk, null);
+        Arrays.fill(items, 0, n - chunk, null);
+
+        head = wrap(head + n);
+        size -= n;
+
+        if (n == 1) {
+            notFull.signal();
+        } else if (n > 1) {
+            notFull.signalAll();
+        }
+
+        return n;
+    }
+
+    /**
+     * Ring position of i in [0, 2 * capacity).
+     */
+    private int wrap(int i)
+    {
+        return i >= capacity ? i - capacity : i;
+    }
+
+    /**
+     * Wait with lock held until there is room, false if timed and nanos ran out first.
+     */
+    private boolean awaitRoom(boolean timed, long nanos) throws InterruptedException
+    {
+        if (size < capacity) {
+            return true;
+        }
+        if (timed && nanos <= 0) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            while (size == capacity) {
+                if (!timed) {
+                    notFull.await();
+                } else if (nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            producerWaits.increment();
+            producerWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wait with lock held until there is an item, false if timed and nanos ran out first.
+     */
+    private boolean awaitItem(boolean timed, long nanos) throws InterruptedException
+    {
+        if (size > 0) {
+            return true;
+        }
+        if (timed && nanos <= 0) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            while (size == 0) {
+                if (!timed) {
+                    notEmpty.await();
+                } else if (nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            consumerWaits.increment();
+            consumerWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+}
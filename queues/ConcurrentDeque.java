@@ -0,0 +1,247 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Thread-safe deque, non-blocking at both ends.
+ *
+ * Built on ConcurrentLinkedDeque, whose operations are linearizable and
+ * lock-free: every change of an end is a single CAS on a node link, so a
+ * stalled thread never blocks others the way a synchronized Deque does.
+ */
+public class ConcurrentDeque<Item> implements Iterable<Item>
+{
+    private final ConcurrentLinkedDeque<Item> items = new ConcurrentLinkedDeque<Item>();
+
+    public ConcurrentDeque()
+    {
+        // No work needed here.
+    }
+
+    /**
+     * Stress test: producers add at both ends while consumers remove from both ends.
+     * Every item must be removed exactly once, and nothing may be left behind.
+     *
+     * Usage: ConcurrentDeque [threads [items per producer]]
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        final int total = threads * count;
+
+        final ConcurrentDeque<Integer> deque = new ConcurrentDeque<Integer>();
+        final AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[2 * threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int producer = t;
+
+            workers[2 * t] = new Thread(new Runnable() {
+                public void run()
+                {
+                    await(start);
+                    for (int i = 0; i < count; i++) {
+                        if (i % 2 == 0) {
+                            deque.addFirst(producer * count + i);
+                        } else {
+                            deque.addLast(producer * count + i);
+                        }
+                    }
+                }
+            });
+
+            workers[2 * t + 1] = new Thread(new Runnable() {
+                public void run()
+                {
+                    await(start);
+                    for (int i = 0; i < count; i++) {
+                        Integer item = null;
+                        while (item == null) {
+                            item = i % 2 == 0 ? deque.pollFirst() : deque.pollLast();
+                        }
+                        seen.incrementAndGet(item);
+                    }
+                }
+            });
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int once = 0;
+        for (int i = 0; i < total; i++) {
+            if (seen.get(i) == 1) {
+                once++;
+            }
+        }
+
+        StdOut.println("Every item removed once:  " + (once == total));
+        StdOut.println("Deque should be empty:    " + deque.isEmpty());
+        StdOut.println("addLast/pollFirst FIFO:   " + ordered(deque, count, false));
+        StdOut.println("addFirst/pollFirst LIFO:  " + ordered(deque, count, true));
+
+        // Single thread must see plain deque semantics.
+        deque.addFirst(1);
+        deque.addFirst(0);
+        deque.addLast(2);
+
+        StdOut.println("First element is 0:       " + (deque.removeFirst() == 0));
+        StdOut.println("Last element is 2:        " + (deque.removeLast() == 2));
+        StdOut.println("Last element is 1:        " + (deque.removeLast() == 1));
+
+        try {
+            deque.removeFirst();
+            StdOut.println("Empty deque throws:       false");
+        } catch (NoSuchElementException e) {
+            StdOut.println("Empty deque throws:       true");
+        }
+    }
+
+    /**
+     * One producer adds 0..n-1 at one end while one consumer polls the first
+     * item, and checks each item against a sequential queue or stack.
+     */
+    private static boolean ordered(final ConcurrentDeque<Integer> deque, final int n, final boolean stack)
+        throws InterruptedException
+    {
+        Thread producer = new Thread(new Runnable() {
+            public void run()
+            {
+                for (int i = 0; i < n; i++) {
+                    if (stack) {
+                        deque.addFirst(i);
+                    } else {
+                        deque.addLast(i);
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        // Items added but not yet polled, in the order a stack would return them.
+        int[] pending = new int[n];
+        int depth = 0;
+        int added = 0;
+        boolean ok = true;
+
+        for (int polled = 0; polled < n; polled++) {
+            Integer item = null;
+            while (item == null) {
+                item = deque.pollFirst();
+            }
+
+            if (!stack) {
+                ok &= item == polled; // FIFO: items arrive in order.
+                continue;
+            }
+
+            // LIFO: item was added after all pending items, or is the newest of them.
+            // Items added before it but not polled yet lie below it.
+            while (added <= item) {
+                pending[depth++] = added++;
+            }
+            ok &= pending[--depth] == item;
+            if (!ok) {
+                break;
+            }
+        }
+
+        producer.join();
+
+        return ok && deque.isEmpty();
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Weakly consistent iterator, never throws ConcurrentModificationException.
+     */
+    public Iterator<Item> iterator()
+    {
+        return items.iterator();
+    }
+
+    public boolean isEmpty()
+    {
+        return items.isEmpty();
+    }
+
+    /**
+     * Walks all items, so O(n) and only a snapshot under concurrent changes.
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    public void addFirst(Item item)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        items.addFirst(item);
+    }
+
+    public void addLast(Item item)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        items.addLast(item);
+    }
+
+    public Item removeFirst()
+    {
+        Item item = items.pollFirst();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    public Item removeLast()
+    {
+        Item item = items.pollLast();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    /**
+     * First item or null if deque is empty. Unlike isEmpty() and removeFirst()
+     * this cannot race with other consumers.
+     */
+    public Item pollFirst()
+    {
+        return items.pollFirst();
+    }
+
+    /**
+     * Last item or null if deque is empty.
+     */
+    public Item pollLast()
+    {
+        return items.pollLast();
+    }
+}
@@ -0,0 +1,484 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe randomized queue, items are striped over sub-arrays with a lock each.
+ *
+ * Enqueue adds to a random stripe, moving on to the next one if its lock is
+ * busy. Dequeue and sample pick a random stripe and a random slot below a bound
+ * on all stripe sizes, and lock that stripe only if the slot holds an item.
+ * Threads mostly work on different stripes, so throughput grows with the
+ * number of threads instead of queueing on one lock, and random numbers come
+ * from ThreadLocalRandom, not a shared seed.
+ *
+ * Uniformity: by rejection sampling every (stripe, slot) pair is equally likely
+ * and empty slots are drawn again, so each of the n items is picked with
+ * probability 1/n however the items are spread, as in RandomizedQueue.
+ * The bound is a power of two kept within twice the largest stripe, so while
+ * stripes are about even a draw takes O(1) expected tries and never reads
+ * the other stripes. This is exact when no other thread changes the queue
+ * during the call; concurrent changes can skew a draw only by the items they
+ * add or remove.
+ */
+public class ConcurrentRandomizedQueue<Item> implements Iterable<Item>
+{
+    private final Stripe[] stripes;
+
+    // Number of stripes - 1, stripe count is a power of two.
+    private final int mask;
+
+    // Power of two at least as large as the size of every stripe.
+    // Raised by enqueue, lowered by take after a round of empty draws.
+    private final AtomicInteger bound = new AtomicInteger(1);
+
+    /**
+     * Four stripes per processor, at least 64 as threads may outnumber processors.
+     * Spare stripes cost only memory, a draw never visits more than one of them.
+     */
+    public ConcurrentRandomizedQueue()
+    {
+        this(Math.max(64, 4 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Given number of stripes, rounded up to a power of two.
+     */
+    public ConcurrentRandomizedQueue(int stripes)
+    {
+        if (stripes < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+
+        this.stripes = new Stripe[n];
+        for (int s = 0; s < n; s++) {
+            this.stripes[s] = new Stripe();
+        }
+        mask = n - 1;
+    }
+
+    /**
+     * Stress test: producers enqueue while consumers dequeue, every item must be
+     * dequeued exactly once. Then check that the first dequeue is uniform.
+     *
+     * Usage: ConcurrentRandomizedQueue [threads [items per producer]]
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        final int total = threads * count;
+
+        final ConcurrentRandomizedQueue<Integer> q = new ConcurrentRandomizedQueue<Integer>();
+        final AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[2 * threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int producer = t;
+
+            workers[2 * t] = new Thread(new Runnable() {
+                public void run()
+                {
+                    await(start);
+                    for (int i = 0; i < count; i++) {
+                        q.enqueue(producer * count + i);
+                    }
+                }
+            });
+
+            workers[2 * t + 1] = new Thread(new Runnable() {
+                public void run()
+                {
+                    await(start);
+                    for (int i = 0; i < count; i++) {
+                        Integer item = null;
+                        while (item == null) {
+                            item = q.poll();
+                        }
+                        seen.incrementAndGet(item);
+                    }
+                }
+            });
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int once = 0;
+        for (int i = 0; i < total; i++) {
+            if (seen.get(i) == 1) {
+                once++;
+            }
+        }
+
+        StdOut.println("Every item dequeued once: " + (once == total));
+        StdOut.println("Queue should be empty:    " + q.isEmpty());
+
+        // Uniformity: n items over more stripes than items, so some are empty.
+        int n = 10;
+        int reps = 200000;
+        int[] first = new int[n];
+
+        for (int r = 0; r < reps; r++) {
+            ConcurrentRandomizedQueue<Integer> u = new ConcurrentRandomizedQueue<Integer>(16);
+            for (int i = 0; i < n; i++) {
+                u.enqueue(i);
+            }
+            first[u.dequeue()]++;
+        }
+
+        double worst = 0;
+        for (int i = 0; i < n; i++) {
+            worst = Math.max(worst, Math.abs((double) first[i] * n / reps - 1));
+        }
+
+        StdOut.println("First dequeue uniform:    " + (worst < 0.05) + " (max deviation " + worst + ")");
+
+        // Interleaved: dequeues leave survivors unevenly spread, then 4 new items
+        // join 4 old ones. The next dequeue should return a new item half the time.
+        int fresh = 0;
+        for (int r = 0; r < reps; r++) {
+            ConcurrentRandomizedQueue<Integer> u = new ConcurrentRandomizedQueue<Integer>(16);
+            for (int i = 0; i < 32; i++) {
+                u.enqueue(i);
+            }
+            for (int i = 0; i < 28; i++) {
+                u.dequeue();
+            }
+            for (int i = 32; i < 36; i++) {
+                u.enqueue(i);
+            }
+            if (u.dequeue() >= 32) {
+                fresh++;
+            }
+        }
+
+        double share = (double) fresh / reps;
+        StdOut.println("Interleaved uniform:      " + (Math.abs(share - 0.5) < 0.01) + " (new item " + share + ")");
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Weakly consistent: shuffled snapshot of each stripe at the time it is visited.
+     */
+    public Iterator<Item> iterator()
+    {
+        Object[] copy = new Object[size()];
+        int n = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock();
+            try {
+                if (n + stripe.size > copy.length) {
+                    Object[] larger = new Object[n + stripe.size];
+                    System.arraycopy(copy, 0, larger, 0, n);
+                    copy = larger;
+                }
+                System.arraycopy(stripe.items, 0, copy, n, stripe.size);
+                n += stripe.size;
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Object swap = copy[i];
+            copy[i] = copy[j];
+            copy[j] = swap;
+        }
+
+        return new SnapshotIterator(copy, n);
+    }
+
+    /**
+     * Queue is empty when every stripe is.
+     */
+    public boolean isEmpty()
+    {
+        for (Stripe stripe : stripes) {
+            if (stripe.size > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sum of stripe sizes, exact only when no other thread is active.
+     */
+    public int size()
+    {
+        int n = 0;
+        for (Stripe stripe : stripes) {
+            n += stripe.size;
+        }
+
+        return n;
+    }
+
+    public void enqueue(Item item)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        int start = ThreadLocalRandom.current().nextInt() & mask;
+
+        // Take the first free stripe, block on the random one if all are busy.
+        for (int k = 0; k < stripes.length; k++) {
+            Stripe stripe = stripes[(start + k) & mask];
+
+            if (stripe.tryLock()) {
+                int n;
+                try {
+                    n = stripe.add(item);
+                } finally {
+                    stripe.unlock();
+                }
+                raise(n);
+                return;
+            }
+        }
+
+        Stripe stripe = stripes[start];
+        int n;
+        stripe.lock();
+        try {
+            n = stripe.add(item);
+        } finally {
+            stripe.unlock();
+        }
+        raise(n);
+    }
+
+    public Item dequeue()
+    {
+        Item item = poll();
+
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    /**
+     * Remove random item, null if every stripe was empty when it was visited.
+     */
+    public Item poll()
+    {
+        return take(true);
+    }
+
+    public Item sample()
+    {
+        Item item = take(false);
+
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    /**
+     * Random item, null if queue was seen empty. Slot i of a random stripe is
+     * drawn below the bound and looked up under the stripe's lock, empty slots
+     * are drawn again. So are slots of busy stripes, which would otherwise park
+     * this thread while enqueuers barge in. After a round of misses the bound
+     * is tightened and from then on busy stripes are waited for.
+     */
+    private Item take(boolean remove)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int misses = 0;
+        boolean wait = false;
+
+        while (true) {
+            Stripe stripe = stripes[random.nextInt() & mask];
+            int i = random.nextInt(bound.get());
+
+            // Size is volatile, so most empty slots are rejected without locking.
+            if (i < stripe.size && lock(stripe, wait)) {
+                try {
+                    if (i < stripe.size) {
+                        return (Item) (remove ? stripe.remove(i) : stripe.items[i]);
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            }
+
+            if (++misses == stripes.length) {
+                if (!tighten()) {
+                    return null;
+                }
+                misses = 0;
+                wait = true;
+            }
+        }
+    }
+
+    private static boolean lock(Stripe stripe, boolean wait)
+    {
+        if (!wait) {
+            return stripe.tryLock();
+        }
+
+        stripe.lock();
+        return true;
+    }
+
+    /**
+     * Raise bound to cover a stripe of size n.
+     */
+    private void raise(int n)
+    {
+        while (true) {
+            int b = bound.get();
+            if (n <= b || bound.compareAndSet(b, ceilingPowerOfTwo(n))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lower bound to the largest stripe, false if every stripe was seen empty.
+     */
+    private boolean tighten()
+    {
+        int b = bound.get();
+        int max = 0;
+        for (Stripe stripe : stripes) {
+            max = Math.max(max, stripe.size);
+        }
+
+        if (max == 0) {
+            return false;
+        }
+
+        // An enqueue that grew a stripe after it was read above either sees
+        // the lowered bound and raises it, or is seen by this second pass.
+        if (ceilingPowerOfTwo(max) < b && bound.compareAndSet(b, ceilingPowerOfTwo(max))) {
+            for (Stripe stripe : stripes) {
+                raise(stripe.size);
+            }
+        }
+
+        return true;
+    }
+
+    private static int ceilingPowerOfTwo(int n)
+    {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Sub-array with swap removal like RandomizedQueue, guarded by its own lock.
+     */
+    private static class Stripe extends ReentrantLock
+    {
+        // Padding laid out ahead of the fields below, so stripes allocated
+        // next to each other do not share a cache line.
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        private Object[] items = new Object[2];
+
+        // Volatile so empty slots can be rejected without locking.
+        private volatile int size;
+
+        /**
+         * Add item, return new size.
+         */
+        int add(Object item)
+        {
+            if (size == items.length) {
+                resize(items.length * 2);
+            }
+
+            items[size] = item;
+            return ++size;
+        }
+
+        Object remove(int i)
+        {
+            Object item = items[i];
+            int last = size - 1;
+
+            items[i] = items[last];
+            items[last] = null; // Avoid loitering.
+            size = last;
+
+            if (last > 0 && last == items.length / 4) {
+                resize(items.length / 2);
+            }
+
+            return item;
+        }
+
+        private void resize(int newSize)
+        {
+            Object[] copy = new Object[newSize];
+            System.arraycopy(items, 0, copy, 0, size);
+            items = copy;
+        }
+    }
+
+    private class SnapshotIterator implements Iterator<Item>
+    {
+        private final Object[] elems;
+        private final int count;
+        private int index;
+
+        public SnapshotIterator(Object[] elems, int count)
+        {
+            this.elems = elems;
+            this.count = count;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean hasNext()
+        {
+            return index < count;
+        }
+
+        public Item next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return (Item) elems[index++];
+        }
+    }
+}
@@ -1,15 +1,29 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Deque<Item> implements Iterable<Item>
 {
+    // Circular buffer, capacity is always a power of two.
+    private Item[] items;
+
+    // Index of the first item.
+    private int head;
+
     private int size;
-    private Node<Item> first;
-    private Node<Item> last;
+
+    // Number of changes, lets iterators and spliterators fail fast.
+    private int modCount;
 
     public Deque()
     {
-        // No work needed here.
+        items = (Item[]) new Object[2]; // Default array size = 2
     }
 
     public static void main(String[] args)
@@ -23,24 +37,29 @@ public class Deque<Item> implements Iterable<Item>
 
         StdOut.println("Size should be 1:               " + (deque.size() == 1));
         StdOut.println("Deque should be not empty:      " + !deque.isEmpty());
-        StdOut.println("First node matches last:        " + (deque.first == deque.last));
-        StdOut.println("Node element is 1:              " + (deque.first.item == 1));
-        StdOut.println("Node's next prop is null:       " + (deque.first.next == null));
-        StdOut.println("Node's prev prop is null:       " + (deque.first.prev == null));
+        StdOut.println("Head wrapped to the end:        " + (deque.head == 1));
+        StdOut.println("Head element is 1:              " + deque.items()[deque.head].equals(1));
 
         deque.addFirst(0);
 
         StdOut.println("Size should be 2:               " + (deque.size() == 2));
-        StdOut.println("First element is 0:             " + (deque.first.item == 0));
-        StdOut.println("Second element is 1:            " + (deque.first.next.item == 1));
-        StdOut.println("Last element is 1:              " + (deque.last.item == 1));
-        StdOut.println("Previous to last element is 0:  " + (deque.last.prev.item == 0));
+        StdOut.println("First element is 0:             " + deque.items()[deque.head].equals(0));
+        StdOut.println("Buffer is full:                 " + (deque.items().length == 2));
+
+        deque.addLast(2);
+
+        StdOut.println("Buffer grew to 4:               " + (deque.items().length == 4));
+        StdOut.println("Buffer unwrapped on grow:       " + (deque.head == 0));
 
         int last = deque.removeLast();
 
+        StdOut.println("Last element is 2:              " + (last == 2));
+        StdOut.println("Size should be 2:               " + (deque.size() == 2));
+
+        last = deque.removeLast();
+
         StdOut.println("Last element is 1:              " + (last == 1));
-        StdOut.println("Size should be 1:               " + (deque.size() == 1));
-        StdOut.println("First node matches last:        " + (deque.first == deque.last));
+        StdOut.println("Buffer shrank to 2:             " + (deque.items().length == 2));
 
         int first = deque.removeFirst();
 
@@ -69,11 +88,109 @@ public class Deque<Item> implements Iterable<Item>
             }
         }
         StdOut.println();
+
+        Integer[] batch = new Integer[100];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i + 3;
+        }
+        deque.addAllLast(batch, 0, batch.length);
+
+        StdOut.println("Batch added in order:           " + (deque.size() == 106 && deque.removeLast() == 102));
+
+        Integer[] drained = new Integer[200];
+        int n = deque.drainTo(drained, 100);
+
+        StdOut.println("Drained 100 in order:           " + (n == 100 && drained[0] == -2 && drained[99] == 96));
+        StdOut.println("Buffer shrank once to 16:       " + (deque.items().length == 16));
+
+        n = deque.drainTo(drained, 200);
+
+        StdOut.println("Drained the rest:               " + (n == 5 && drained[4] == 101 && deque.isEmpty()));
+
+        deque.addAllLast(batch, 0, batch.length);
+        deque.drainTo(drained, 200);
+
+        StdOut.println("Emptied buffer back to 2:       " + (deque.items().length == 2));
+
+        try {
+            deque.addAllLast(new Integer[] { 1, null }, 0, 2);
+            StdOut.println("Null in batch throws:           false");
+        } catch (NullPointerException e) {
+            StdOut.println("Null in batch throws:           " + deque.isEmpty());
+        }
+
+        for (int i = 1; i <= 1000; i++) {
+            deque.addFirst(i);
+        }
+
+        try {
+            for (int i : deque) {
+                if (i == 500) {
+                    deque.removeLast();
+                }
+            }
+            StdOut.println("Change while iterating throws:  false");
+        } catch (ConcurrentModificationException e) {
+            StdOut.println("Change while iterating throws:  true");
+        }
+
+        Spliterator<Integer> left = deque.spliterator();
+        Spliterator<Integer> right = left.trySplit();
+
+        StdOut.println("Spliterator splits in halves:   "
+            + (left.estimateSize() == 500 && right.estimateSize() == 499));
+
+        int sum = deque.parallelStream().reduce(0, new BinaryOperator<Integer>() {
+            public Integer apply(Integer a, Integer b)
+            {
+                return a + b;
+            }
+        });
+
+        StdOut.println("Parallel stream sums all:       " + (sum == 1000 * 1001 / 2 - 1));
     }
 
+    /**
+     * Fail-fast iterator, throws ConcurrentModificationException if the deque
+     * is changed other than through it.
+     */
     public Iterator<Item> iterator()
     {
-        return new ListIterator();
+        return new ArrayIterator();
+    }
+
+    /**
+     * Ordered, sized spliterator over the items, splits evenly in halves.
+     * Binds to the deque at first use and fails fast after that.
+     */
+    public Spliterator<Item> spliterator()
+    {
+        return new ArraySpliterator(0, -1, 0);
+    }
+
+    public Stream<Item> stream()
+    {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<Item> parallelStream()
+    {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Walk the array directly, without an iterator.
+     */
+    public void forEach(Consumer<? super Item> action)
+    {
+        int expected = modCount;
+
+        for (int i = 0; i < size && modCount == expected; i++) {
+            action.accept(items[(head + i) & (items.length - 1)]);
+        }
+        if (modCount != expected) {
+            throw new ConcurrentModificationException();
+        }
     }
 
     /**
@@ -81,7 +198,7 @@ public class Deque<Item> implements Iterable<Item>
      */
     public boolean isEmpty()
     {
-        return first == null;
+        return size == 0;
     }
 
     public int size()
@@ -95,17 +212,17 @@ public class Deque<Item> implements Iterable<Item>
             throw new NullPointerException();
         }
 
-        Node<Item> oldFirst = first;
-        first = new Node<Item>(item);
-        first.next = oldFirst;
-
-        if (oldFirst == null) {
-            last = first;
-        } else {
-            oldFirst.prev = first; // Link old first back to new first.
+        // Items array is full -> resize.
+        if (size == items.length) {
+            resize(items.length * 2);
         }
 
+        // Step head back, wrapping around to the end of the array.
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+
         size++;
+        modCount++;
     }
 
     public void addLast(Item item)
@@ -114,17 +231,14 @@ public class Deque<Item> implements Iterable<Item>
             throw new NullPointerException();
         }
 
-        Node<Item> oldLast = last;
-        last = new Node<Item>(item);
-        last.prev = oldLast;
-
-        if (oldLast == null) {
-            first = last;
-        } else {
-            oldLast.next = last; // Link old last next to new last.
+        if (size == items.length) {
+            resize(items.length * 2);
         }
 
+        items[(head + size) & (items.length - 1)] = item;
+
         size++;
+        modCount++;
     }
 
     public Item removeFirst()
@@ -133,19 +247,15 @@ public class Deque<Item> implements Iterable<Item>
             throw new NoSuchElementException();
         }
 
-        Node<Item> oldFirst = first;
-        first = first.next;
-
-        // Avoid loitering
-        if (first == null) {
-            last = null;
-        } else {
-            first.prev = null;
-        }
+        Item item = items[head];
+        items[head] = null; // Avoid loitering.
+        head = (head + 1) & (items.length - 1);
 
         size--;
+        modCount++;
+        shrink();
 
-        return oldFirst.item;
+        return item;
     }
 
     public Item removeLast()
@@ -154,41 +264,130 @@ public class Deque<Item> implements Iterable<Item>
             throw new NoSuchElementException();
         }
 
-        Node<Item> oldLast = last;
-        last = last.prev;
+        int i = (head + size - 1) & (items.length - 1);
+        Item item = items[i];
+        items[i] = null; // Avoid loitering.
+
+        size--;
+        modCount++;
+        shrink();
+
+        return item;
+    }
+
+    /**
+     * Add src[from..to) at the end in order, with one resize and at most two
+     * array copies. Nothing is added if any of the items is null.
+     */
+    public void addAllLast(Item[] src, int from, int to)
+    {
+        if (from < 0 || to > src.length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = from; i < to; i++) {
+            if (src[i] == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        int n = to - from;
 
-        if (last == null) {
-            first = null;
-        } else {
-            last.next = null;
+        if (size + n > items.length) {
+            int capacity = items.length;
+            while (capacity < size + n) {
+                capacity *= 2;
+            }
+            resize(capacity);
         }
 
-        size--;
+        // Free space runs from the tail, wrapping around to the start of the array.
+        int tail = (head + size) & (items.length - 1);
+        int chunk = Math.min(n, items.length - tail);
+
+        System.arraycopy(src, from, items, tail, chunk);
+        System.arraycopy(src, from + chunk, items, 0, n - chunk);
 
-        return oldLast.item;
+        size += n;
+        modCount++;
     }
 
     /**
-     * Node with pointers to prev/next items.
+     * Remove up to max items from the front into dst[0..), in order.
+     * Returns number of items removed.
      */
-    private class Node<Item>
+    public int drainTo(Item[] dst, int max)
     {
-        private Item item;
-        private Node<Item> next;
-        private Node<Item> prev;
+        if (max < 0) {
+            throw new IllegalArgumentException();
+        }
 
-        public Node(Item item)
-        {
-            this.item = item;
+        int n = Math.min(size, Math.min(max, dst.length));
+        int chunk = Math.min(n, items.length - head);
+
+        System.arraycopy(items, head, dst, 0, chunk);
+        System.arraycopy(items, 0, dst, chunk, n - chunk);
+
+        // Avoid loitering.
+        Arrays.fill(items, head, head + chunk, null);
+        Arrays.fill(items, 0, n - chunk, null);
+
+        head = (head + n) & (items.length - 1);
+        size -= n;
+        modCount++;
+        shrink();
+
+        return n;
+    }
+
+    /**
+     * Backing array as seen by main(), the generic array is an Object[] at runtime.
+     */
+    private Object[] items()
+    {
+        return items;
+    }
+
+    /**
+     * Shrink items array while it is at most a quarter full, with one resize.
+     * A batch can empty it at once, then it goes back to the default size.
+     */
+    private void shrink()
+    {
+        int capacity = items.length;
+        if (size == 0) {
+            capacity = 2;
+        }
+        while (size > 0 && size <= capacity / 4) {
+            capacity /= 2;
+        }
+
+        if (capacity != items.length) {
+            resize(capacity);
         }
     }
 
     /**
-     * Deque iterator.
+     * Copy items in order to the start of a new array, at most two chunks.
      */
-    private class ListIterator implements Iterator<Item>
+    private void resize(int newSize)
     {
-        private Node<Item> current = first;
+        Item[] copy = (Item[]) new Object[newSize];
+        int tail = Math.min(size, items.length - head);
+
+        System.arraycopy(items, head, copy, 0, tail);
+        System.arraycopy(items, 0, copy, tail, size - tail);
+
+        items = copy;
+        head = 0;
+    }
+
+    /**
+     * Deque iterator, walks the array in order.
+     */
+    private class ArrayIterator implements Iterator<Item>
+    {
+        private final int expected = modCount;
+        private int index;
 
         public void remove()
         {
@@ -197,19 +396,117 @@ public class Deque<Item> implements Iterable<Item>
 
         public boolean hasNext()
         {
-            return current != null;
+            return index < size;
         }
 
         public Item next()
         {
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
 
-            Item item = current.item;
-            current = current.next;
+            return items[(head + index++) & (items.length - 1)];
+        }
+
+        public void forEachRemaining(Consumer<? super Item> action)
+        {
+            for (; index < size && modCount == expected; index++) {
+                action.accept(items[(head + index) & (items.length - 1)]);
+            }
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
 
-            return item;
+    /**
+     * Spliterator over positions [index, fence) of the deque, fence is -1
+     * until first use.
+     */
+    private class ArraySpliterator implements Spliterator<Item>
+    {
+        private int index, fence, expected;
+
+        public ArraySpliterator(int index, int fence, int expected)
+        {
+            this.index = index;
+            this.fence = fence;
+            this.expected = expected;
+        }
+
+        /**
+         * Bind to the current contents on first use.
+         */
+        private int fence()
+        {
+            if (fence < 0) {
+                fence = size;
+                expected = modCount;
+            }
+
+            return fence;
+        }
+
+        public Spliterator<Item> trySplit()
+        {
+            int hi = fence();
+            int mid = (index + hi) >>> 1;
+
+            if (index >= mid) {
+                return null;
+            }
+
+            ArraySpliterator prefix = new ArraySpliterator(index, mid, expected);
+            index = mid;
+
+            return prefix;
+        }
+
+        public boolean tryAdvance(Consumer<? super Item> action)
+        {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (index >= fence()) {
+                return false;
+            }
+
+            Item item = items[(head + index++) & (items.length - 1)];
+            action.accept(item);
+
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Item> action)
+        {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+
+            int hi = fence();
+            for (; index < hi && modCount == expected; index++) {
+                action.accept(items[(head + index) & (items.length - 1)]);
+            }
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public long estimateSize()
+        {
+            return fence() - index;
+        }
+
+        public int characteristics()
+        {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
         }
     }
 }
@@ -0,0 +1,187 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Randomized queue of double values without boxing, see RandomizedQueue.
+ */
+public class DoubleRandomizedQueue implements Iterable<Double>
+{
+    private double[] items;
+
+    // Number of elements in the queue, also next available spot to insert.
+    private int size;
+
+    // Source of dequeue and sample order.
+    private final RandomSource random;
+
+    // Splits of it shuffle iterators, so iterating never changes dequeue order.
+    private final RandomSource shuffles;
+
+    public DoubleRandomizedQueue()
+    {
+        this(RandomSource.splittable());
+    }
+
+    /**
+     * Reproducible order for given seed.
+     */
+    public DoubleRandomizedQueue(long seed)
+    {
+        this(RandomSource.splittable(seed));
+    }
+
+    public DoubleRandomizedQueue(RandomSource random)
+    {
+        if (random == null) {
+            throw new NullPointerException();
+        }
+
+        this.random = random;
+        shuffles = random.split();
+        items = new double[2]; // Default array size = 2
+    }
+
+    public static void main(String[] args)
+    {
+        DoubleRandomizedQueue q = new DoubleRandomizedQueue();
+
+        StdOut.println("Queue is empty:        " + q.isEmpty());
+
+        q.enqueue(1);
+        q.enqueue(2);
+        q.enqueue(3);
+
+        StdOut.println("Queue size is 3:       " + (q.size() == 3));
+        StdOut.println("Random sample element: " + q.sample());
+
+        double sum = q.dequeue() + q.dequeue() + q.dequeue();
+
+        StdOut.println("Dequeued all elements: " + (sum == 6));
+        StdOut.println("Queue is empty:        " + q.isEmpty());
+
+        try {
+            q.dequeue();
+            StdOut.println("Empty queue throws:    false");
+        } catch (NoSuchElementException e) {
+            StdOut.println("Empty queue throws:    true");
+        }
+
+        for (int i = 1; i <= 6; i++) {
+            q.enqueue(i);
+        }
+
+        StdOut.print("Elements:");
+        PrimitiveIterator.OfDouble it = q.iterator();
+        while (it.hasNext()) {
+            StdOut.print(" " + it.nextDouble());
+        }
+        StdOut.println();
+    }
+
+    public PrimitiveIterator.OfDouble iterator()
+    {
+        // Copy array for iterator to use.
+        double[] copy = new double[size];
+        System.arraycopy(items, 0, copy, 0, size);
+
+        return new RandomIterator(copy);
+    }
+
+    /**
+     * Queue is empty when size = 0.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Simplest enqueue possible. Insert item to the next available index.
+     */
+    public void enqueue(double item)
+    {
+        // Items array is full -> resize.
+        if (size == items.length) {
+            resize(items.length * 2);
+        }
+
+        items[size++] = item;
+    }
+
+    public double dequeue()
+    {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int i = random.nextInt(size);
+        double item = items[i];
+
+        // Move last item into the hole.
+        items[i] = items[--size];
+
+        // Shrink items array.
+        if (size > 0 && size == items.length / 4) {
+            resize(items.length / 2);
+        }
+
+        return item;
+    }
+
+    public double sample()
+    {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        return items[random.nextInt(size)];
+    }
+
+    private void resize(int newSize)
+    {
+        double[] copy = new double[newSize];
+        System.arraycopy(items, 0, copy, 0, size);
+        items = copy;
+    }
+
+    private class RandomIterator implements PrimitiveIterator.OfDouble
+    {
+        private final RandomSource random = shuffles.split();
+        private double[] elems;
+        private int index;
+
+        public RandomIterator(double[] elems)
+        {
+            this.elems = elems;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean hasNext()
+        {
+            return index < elems.length;
+        }
+
+        public double nextDouble()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            // One Fisher-Yates step: random pick of the not yet returned elements.
+            int j = index + random.nextInt(elems.length - index);
+            double elem = elems[j];
+            elems[j] = elems[index++];
+
+            return elem;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Deque of int values without boxing, see Deque.
+ */
+public class IntDeque implements Iterable<Integer>
+{
+    // Circular buffer, capacity is always a power of two.
+    private int[] items;
+
+    // Index of the first item.
+    private int head;
+
+    private int size;
+
+    public IntDeque()
+    {
+        items = new int[2]; // Default array size = 2
+    }
+
+    public static void main(String[] args)
+    {
+        IntDeque deque = new IntDeque();
+
+        StdOut.println("Deque should be empty:          " + deque.isEmpty());
+
+        deque.addFirst(1);
+        deque.addFirst(0);
+        deque.addLast(2);
+
+        StdOut.println("Size should be 3:               " + (deque.size() == 3));
+        StdOut.println("Last element is 2:              " + (deque.removeLast() == 2));
+        StdOut.println("First element is 0:             " + (deque.removeFirst() == 0));
+        StdOut.println("First element is 1:             " + (deque.removeFirst() == 1));
+        StdOut.println("Deque should be empty:          " + deque.isEmpty());
+
+        try {
+            deque.removeFirst();
+            StdOut.println("Empty deque throws:             false");
+        } catch (NoSuchElementException e) {
+            StdOut.println("Empty deque throws:             true");
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            deque.addLast(i);
+            deque.addFirst(-i);
+        }
+
+        StdOut.print("Elements:");
+        PrimitiveIterator.OfInt it = deque.iterator();
+        while (it.hasNext()) {
+            StdOut.print(" " + it.nextInt());
+        }
+        StdOut.println();
+    }
+
+    public PrimitiveIterator.OfInt iterator()
+    {
+        return new ArrayIterator();
+    }
+
+    /**
+     * Deque is empty when size is zero.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void addFirst(int item)
+    {
+        // Items array is full -> resize.
+        if (size == items.length) {
+            resize(items.length * 2);
+        }
+
+        // Step head back, wrapping around to the end of the array.
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+
+        size++;
+    }
+
+    public void addLast(int item)
+    {
+        if (size == items.length) {
+            resize(items.length * 2);
+        }
+
+        items[(head + size) & (items.length - 1)] = item;
+
+        size++;
+    }
+
+    public int removeFirst()
+    {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int item = items[head];
+        head = (head + 1) & (items.length - 1);
+
+        size--;
+        shrink();
+
+        return item;
+    }
+
+    public int removeLast()
+    {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int item = items[(head + size - 1) & (items.length - 1)];
+
+        size--;
+        shrink();
+
+        return item;
+    }
+
+    /**
+     * Shrink items array when it is a quarter full.
+     */
+    private void shrink()
+    {
+        if (size > 0 && size == items.length / 4) {
+            resize(items.length / 2);
+        }
+    }
+
+    /**
+     * Copy items in order to the start of a new array, at most two chunks.
+     */
+    private void resize(int newSize)
+    {
+        int[] copy = new int[newSize];
+        int tail = Math.min(size, items.length - head);
+
+        System.arraycopy(items, head, copy, 0, tail);
+        System.arraycopy(items, 0, copy, tail, size - tail);
+
+        items = copy;
+        head = 0;
+    }
+
+    /**
+     * Deque iterator, walks the array in order.
+     */
+    private class ArrayIterator implements PrimitiveIterator.OfInt
+    {
+        private int index;
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean hasNext()
+        {
+            return index < size;
+        }
+
+        public int nextInt()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return items[(head + index++) & (items.length - 1)];
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random numbers for the randomized queues. Any generator can be plugged in,
+ * e.g. a xoshiro implementation, by implementing these two methods.
+ */
+public interface RandomSource
+{
+    /**
+     * Uniform int in [0, bound), bound is positive.
+     */
+    int nextInt(int bound);
+
+    /**
+     * Generator of its own stream, so its use does not change this one's.
+     */
+    RandomSource split();
+
+    /**
+     * Fresh SplittableRandom, seeded differently each time.
+     */
+    static RandomSource splittable()
+    {
+        return of(new SplittableRandom());
+    }
+
+    /**
+     * SplittableRandom of given seed, for reproducible runs.
+     */
+    static RandomSource splittable(long seed)
+    {
+        return of(new SplittableRandom(seed));
+    }
+
+    static RandomSource of(final SplittableRandom random)
+    {
+        if (random == null) {
+            throw new NullPointerException();
+        }
+
+        return new RandomSource() {
+            public int nextInt(int bound)
+            {
+                return random.nextInt(bound);
+            }
+
+            public RandomSource split()
+            {
+                return of(random.split());
+            }
+        };
+    }
+
+    /**
+     * ThreadLocalRandom of the calling thread, never seeded and never shared.
+     */
+    static RandomSource threadLocal()
+    {
+        return new RandomSource() {
+            public int nextInt(int bound)
+            {
+                return ThreadLocalRandom.current().nextInt(bound);
+            }
+
+            public RandomSource split()
+            {
+                return this;
+            }
+        };
+    }
+}
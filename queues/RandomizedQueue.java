@@ -1,4 +1,8 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class RandomizedQueue<Item> implements Iterable<Item>
@@ -11,8 +15,37 @@ public class RandomizedQueue<Item> implements Iterable<Item>
     // Next available spot to insert new item.
     private int last;
 
+    // Source of dequeue and sample order. Each queue has its own, so queues
+    // never contend on a shared seed the way StdRandom callers do.
+    private final RandomSource random;
+
+    // Splits of it shuffle iterators, so iterating never changes dequeue order.
+    private final RandomSource shuffles;
+
+    // Number of enqueues and dequeues, lets view iterators detect changes.
+    private int modCount;
+
     public RandomizedQueue()
     {
+        this(RandomSource.splittable());
+    }
+
+    /**
+     * Reproducible order for given seed.
+     */
+    public RandomizedQueue(long seed)
+    {
+        this(RandomSource.splittable(seed));
+    }
+
+    public RandomizedQueue(RandomSource random)
+    {
+        if (random == null) {
+            throw new NullPointerException();
+        }
+
+        this.random = random;
+        shuffles = random.split();
         items = (Item[]) new Object[2]; // Default array size = 2
     }
 
@@ -71,19 +104,104 @@ public class RandomizedQueue<Item> implements Iterable<Item>
             }
         }
         StdOut.println();
+
+        RandomizedQueue<Integer> a = new RandomizedQueue<Integer>(42);
+        RandomizedQueue<Integer> b = new RandomizedQueue<Integer>(42);
+        boolean same = true;
+        for (int i = 0; i < 100; i++) {
+            a.enqueue(i);
+            b.enqueue(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            // Iterating one of them must not change its dequeue order.
+            if (i % 10 == 0) {
+                for (int j : a) {
+                    same &= j >= 0;
+                }
+                a.view().next();
+            }
+            same &= a.dequeue().equals(b.dequeue());
+        }
+
+        StdOut.println("Same seed, same order: " + same);
+
+        RandomizedQueue<Integer> big = new RandomizedQueue<Integer>();
+        for (int i = 0; i < 1000000; i++) {
+            big.enqueue(i);
+        }
+
+        Iterator<Integer> view = big.view();
+        boolean distinct = true;
+        HashMap<Integer, Boolean> taken = new HashMap<Integer, Boolean>();
+        for (int i = 0; i < 10; i++) {
+            distinct &= taken.put(view.next(), true) == null;
+        }
+
+        StdOut.println("View takes distinct:   " + distinct);
+
+        big.dequeue();
+        try {
+            view.next();
+            StdOut.println("Changed queue throws:  false");
+        } catch (ConcurrentModificationException e) {
+            StdOut.println("Changed queue throws:  true");
+        }
+
+        Integer[] batch = new Integer[1000];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i;
+        }
+
+        RandomizedQueue<Integer> b2 = new RandomizedQueue<Integer>();
+        b2.enqueueAll(batch, 0, batch.length);
+
+        List<Integer> some = b2.dequeueBatch(990);
+        Integer[] rest = new Integer[20];
+        int n = b2.drainTo(rest, 20);
+
+        boolean[] found = new boolean[batch.length];
+        for (int i : some) {
+            found[i] = true;
+        }
+        for (int i = 0; i < n; i++) {
+            found[rest[i]] = true;
+        }
+        boolean all = n == 10 && b2.isEmpty();
+        for (boolean f : found) {
+            all &= f;
+        }
+
+        StdOut.println("Batches took all once: " + all);
+
+        b2.enqueueAll(batch, 0, batch.length);
+        b2.dequeueBatch(batch.length);
+
+        StdOut.println("Emptied to capacity 2: " + (b2.items().length == 2));
     }
 
+    /**
+     * Iterator over a snapshot, shuffled one step per next(). Setup is a
+     * single array copy, later changes of the queue are not seen.
+     */
     public Iterator<Item> iterator()
     {
         // Copy array for iterator to use.
         Item[] copy = (Item[]) new Object[size];
-        for (int i = 0; i < size; i++) {
-            copy[i] = items[i];
-        }
+        System.arraycopy(items, 0, copy, 0, size);
 
         return new RandomIterator(copy);
     }
 
+    /**
+     * Copy-free iterator over the queue itself, O(1) setup and O(k) time and
+     * memory for the first k items. Throws ConcurrentModificationException if
+     * the queue is changed while it is in use.
+     */
+    public Iterator<Item> view()
+    {
+        return new ViewIterator();
+    }
+
     /**
      * Queue is empty when size = 0.
      */
@@ -114,6 +232,7 @@ public class RandomizedQueue<Item> implements Iterable<Item>
         items[last++] = item;
 
         size++;
+        modCount++;
     }
 
     public Item dequeue()
@@ -122,11 +241,12 @@ public class RandomizedQueue<Item> implements Iterable<Item>
             throw new NoSuchElementException();
         }
 
-        int i = StdRandom.uniform(0, last);
+        int i = random.nextInt(last);
         Item item = items[i];
 
         last--;
         size--;
+        modCount++;
 
         // In case randomly selected element is not last -> swap it with last.
         if (i != last) {
@@ -136,14 +256,76 @@ public class RandomizedQueue<Item> implements Iterable<Item>
             items[i] = null; // Avoid loitering.
         }
 
-        // Shrink items array.
-        if (size > 0 && size == items.length / 4) {
-            resize(items.length / 2);
-        }
+        shrink();
 
         return item;
     }
 
+    /**
+     * Enqueue src[from..to) with one resize and one array copy.
+     * Nothing is enqueued if any of the items is null.
+     */
+    public void enqueueAll(Item[] src, int from, int to)
+    {
+        if (from < 0 || to > src.length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = from; i < to; i++) {
+            if (src[i] == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        int n = to - from;
+
+        if (size + n > items.length) {
+            int capacity = items.length;
+            while (capacity < size + n) {
+                capacity *= 2;
+            }
+            resize(capacity);
+        }
+
+        System.arraycopy(src, from, items, last, n);
+
+        last += n;
+        size += n;
+        modCount++;
+    }
+
+    /**
+     * Dequeue k random items at once, in random order.
+     */
+    public List<Item> dequeueBatch(int k)
+    {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (k > size) {
+            throw new NoSuchElementException();
+        }
+
+        Item[] batch = (Item[]) new Object[k];
+        take(batch, k);
+
+        return Arrays.asList(batch);
+    }
+
+    /**
+     * Dequeue up to max random items into dst[0..). Returns number of items dequeued.
+     */
+    public int drainTo(Item[] dst, int max)
+    {
+        if (max < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = Math.min(size, Math.min(max, dst.length));
+        take(dst, n);
+
+        return n;
+    }
+
     public Item sample()
     {
         if (isEmpty()) {
@@ -151,29 +333,77 @@ public class RandomizedQueue<Item> implements Iterable<Item>
         }
 
         // Get index of 0...last.
-        int i = StdRandom.uniform(0, last);
+        int i = random.nextInt(last);
 
         return items[i];
     }
 
+    /**
+     * Backing array as seen by main(), the generic array is an Object[] at runtime.
+     */
+    private Object[] items()
+    {
+        return items;
+    }
+
+    /**
+     * Move n random items to dst[0..n). A partial Fisher-Yates shuffle gathers
+     * them at the end of items, then they leave with one array copy.
+     */
+    private void take(Item[] dst, int n)
+    {
+        int start = last - n;
+
+        for (int i = last - 1; i >= start; i--) {
+            int j = random.nextInt(i + 1);
+            Item swap = items[i];
+            items[i] = items[j];
+            items[j] = swap;
+        }
+
+        System.arraycopy(items, start, dst, 0, n);
+        Arrays.fill(items, start, last, null); // Avoid loitering.
+
+        last = start;
+        size -= n;
+        modCount++;
+        shrink();
+    }
+
+    /**
+     * Shrink items array while it is at most a quarter full, with one resize.
+     * A batch can empty it at once, then it goes back to the default size.
+     */
+    private void shrink()
+    {
+        int capacity = items.length;
+        if (size == 0) {
+            capacity = 2;
+        }
+        while (size > 0 && size <= capacity / 4) {
+            capacity /= 2;
+        }
+
+        if (capacity != items.length) {
+            resize(capacity);
+        }
+    }
+
     private void resize(int newSize)
     {
         Item[] copy = (Item[]) new Object[newSize];
-        for (int i = 0; i < size; i++) {
-            copy[i] = items[i];
-        }
+        System.arraycopy(items, 0, copy, 0, size);
         items = copy;
     }
 
     private class RandomIterator implements Iterator<Item>
     {
+        private final RandomSource random = shuffles.split();
         private Item[] elems;
         private int index;
 
         public RandomIterator(Item[] elems)
         {
-            StdRandom.shuffle(elems);
-
             this.elems = elems;
         }
 
@@ -193,7 +423,107 @@ public class RandomizedQueue<Item> implements Iterable<Item>
                 throw new NoSuchElementException();
             }
 
-            return elems[index++];
+            // One Fisher-Yates step: random pick of the not yet returned elements.
+            int j = index + random.nextInt(elems.length - index);
+            Item elem = elems[j];
+            elems[j] = elems[index];
+            elems[index++] = null; // Avoid loitering.
+
+            return elem;
+        }
+    }
+
+    /**
+     * Fisher-Yates over the positions of the queue without moving its items.
+     * Only positions that were swapped are stored, so k steps cost O(k).
+     * They live in an open addressing int map, keys are stored plus one so 0 marks a free slot.
+     */
+    private class ViewIterator implements Iterator<Item>
+    {
+        private final RandomSource random = shuffles.split();
+        private final int expected = modCount;
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int count;
+        private int index;
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean hasNext()
+        {
+            return index < size;
+        }
+
+        public Item next()
+        {
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int j = index + random.nextInt(size - index);
+            int position = position(j);
+
+            // Position at index moves to j, index is never looked up again so it stays stale.
+            put(j, position(index));
+            index++;
+
+            return items[position];
+        }
+
+        /**
+         * Position of the queue currently at slot i of the virtual permutation.
+         */
+        private int position(int i)
+        {
+            int slot = slot(i);
+
+            return keys[slot] == 0 ? i : values[slot];
+        }
+
+        private void put(int i, int position)
+        {
+            int slot = slot(i);
+            if (keys[slot] == 0) {
+                keys[slot] = i + 1;
+                count++;
+            }
+            values[slot] = position;
+
+            // Keep load at most a half so probe sequences stay short.
+            if (2 * count > keys.length) {
+                int[] oldKeys = keys, oldValues = values;
+                keys = new int[2 * oldKeys.length];
+                values = new int[2 * oldKeys.length];
+                for (int k = 0; k < oldKeys.length; k++) {
+                    if (oldKeys[k] != 0) {
+                        slot = slot(oldKeys[k] - 1);
+                        keys[slot] = oldKeys[k];
+                        values[slot] = oldValues[k];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Slot holding key i, or the free slot where it belongs, by linear probing.
+         */
+        private int slot(int i)
+        {
+            int mask = keys.length - 1;
+            int h = i * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+
+            while (keys[slot] != 0 && keys[slot] != i + 1) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
         }
     }
 }
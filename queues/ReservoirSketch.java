@@ -0,0 +1,162 @@
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Uniform random sample of at most k items of a stream (Algorithm R), kept in
+ * a RandomizedQueue. Sketches of disjoint streams merge into a uniform sample
+ * of their union, so shards can be sampled in parallel and combined.
+ */
+public class ReservoirSketch<Item> implements Iterable<Item>
+{
+    private final int k;
+    private final SplittableRandom random;
+    private RandomizedQueue<Item> reservoir;
+
+    // Number of items of the stream so far.
+    private long seen;
+
+    public ReservoirSketch(int k)
+    {
+        this(k, new SplittableRandom());
+    }
+
+    public ReservoirSketch(int k, SplittableRandom random)
+    {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (random == null) {
+            throw new NullPointerException();
+        }
+
+        this.k = k;
+        this.random = random;
+        reservoir = new RandomizedQueue<Item>(RandomSource.of(random.split()));
+    }
+
+    /**
+     * Sample 0..n-1 in two uneven shards and merge, every number should be
+     * in the merged sample with probability k/n.
+     *
+     * Usage: ReservoirSketch [k [n [reps]]]
+     */
+    public static void main(String[] args)
+    {
+        int k = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int reps = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        SplittableRandom random = new SplittableRandom(1);
+        int[] hits = new int[n];
+
+        for (int r = 0; r < reps; r++) {
+            ReservoirSketch<Integer> left = new ReservoirSketch<Integer>(k, random.split());
+            ReservoirSketch<Integer> right = new ReservoirSketch<Integer>(k, random.split());
+
+            for (int i = 0; i < n; i++) {
+                if (i < n / 7) {
+                    left.add(i);
+                } else {
+                    right.add(i);
+                }
+            }
+
+            left.merge(right);
+            for (int i : left) {
+                hits[i]++;
+            }
+        }
+
+        double worst = 0;
+        for (int i = 0; i < n; i++) {
+            worst = Math.max(worst, Math.abs((double) hits[i] * n / reps / Math.min(k, n) - 1));
+        }
+
+        StdOut.println("Merged sample uniform: " + (worst < 0.05) + " (max deviation " + worst + ")");
+    }
+
+    public Iterator<Item> iterator()
+    {
+        return reservoir.iterator();
+    }
+
+    /**
+     * Number of items in the sample, min(k, seen).
+     */
+    public int size()
+    {
+        return reservoir.size();
+    }
+
+    /**
+     * Number of items offered so far.
+     */
+    public long seen()
+    {
+        return seen;
+    }
+
+    public void add(Item item)
+    {
+        if (admit()) {
+            keep(item);
+        }
+    }
+
+    /**
+     * Count next item of the stream, true if it must be kept. Lets callers
+     * skip building items that are not kept, like Subset does with strings.
+     */
+    public boolean admit()
+    {
+        seen++;
+
+        return seen <= k || random.nextLong(seen) < k;
+    }
+
+    /**
+     * Keep item just admitted, in place of a random one if sample is full.
+     */
+    public void keep(Item item)
+    {
+        if (reservoir.size() == k) {
+            reservoir.dequeue();
+        }
+        reservoir.enqueue(item);
+    }
+
+    /**
+     * Replace this sample by a uniform sample of both streams. Draws come from
+     * either side with hypergeometric probabilities: with n1 and n2 items not
+     * yet drawn, the left side is picked with probability n1 / (n1 + n2), and
+     * a random item of the picked reservoir is taken. Other is used up.
+     */
+    public void merge(ReservoirSketch<Item> other)
+    {
+        if (other.k != k) {
+            throw new IllegalArgumentException();
+        }
+
+        RandomizedQueue<Item> merged = new RandomizedQueue<Item>(RandomSource.of(random.split()));
+        long n1 = seen;
+        long n2 = other.seen;
+        long draws = Math.min(k, n1 + n2);
+
+        // Never more draws from a side than its min(k, n) items.
+        for (long i = 0; i < draws; i++) {
+            if (random.nextLong(n1 + n2) < n1) {
+                merged.enqueue(reservoir.dequeue());
+                n1--;
+            } else {
+                merged.enqueue(other.reservoir.dequeue());
+                n2--;
+            }
+        }
+
+        reservoir = merged;
+        seen += other.seen;
+
+        other.reservoir = new RandomizedQueue<Item>(RandomSource.of(other.random.split()));
+        other.seen = 0;
+    }
+}
@@ -1,20 +1,295 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Print k strings chosen uniformly at random from standard input.
+ *
+ * Input is streamed once through a reservoir of k items (Algorithm R): the
+ * i-th string replaces a random reservoir item with probability k/i. Memory
+ * is O(k) however large the input, and only accepted strings are decoded.
+ *
+ * A file can instead be split into memory-mapped chunks at whitespace, which
+ * are sampled in parallel and merged into one uniform sample.
+ */
 public class Subset
 {
+    // Chunk size of parallel sampling, independent of threads so that the
+    // sample depends on the seed only. A single mapping is limited to 2 GB.
+    private static final long CHUNK = 1L << 26;
+
+    /**
+     * Usage: Subset k [seed] < input
+     *        Subset k seed file [threads]
+     */
     public static void main(String[] args)
     {
         int k = Integer.parseInt(args[0]);
-        String[] items = StdIn.readAllStrings();
+        SplittableRandom random = args.length > 1
+            ? new SplittableRandom(Long.parseLong(args[1]))
+            : new SplittableRandom();
 
-        StdRandom.shuffle(items);
+        ReservoirSketch<String> sample;
+        if (args.length > 2) {
+            int threads = args.length > 3
+                ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
 
-        RandomizedQueue<String> q = new RandomizedQueue<String>();
-
-        for (int i = 0; i < k; i++) {
-            q.enqueue(items[i]);
+            sample = sample(args[2], k, threads, random);
+        } else {
+            sample = sample(new Tokenizer(System.in), k, random);
         }
 
-        for (String s : q) {
+        for (String s : sample) {
             StdOut.println(s);
         }
     }
+
+    /**
+     * Reservoir of k tokens, fewer if input is shorter.
+     */
+    static ReservoirSketch<String> sample(Tokenizer in, int k, SplittableRandom random)
+    {
+        ReservoirSketch<String> sketch = new ReservoirSketch<String>(k, random);
+
+        while (in.hasNext()) {
+            if (sketch.admit()) {
+                sketch.keep(in.next());
+            } else {
+                in.skip();
+            }
+        }
+
+        return sketch;
+    }
+
+    /**
+     * Reservoir of k tokens of file, chunks sampled on given number of threads.
+     * Same seed gives the same sample for any number of threads.
+     */
+    static ReservoirSketch<String> sample(String path, int k, int threads, SplittableRandom random)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long length = file.size();
+
+            int chunks = (int) Math.max(1, (length + CHUNK - 1) / CHUNK);
+            long[] bounds = new long[chunks + 1];
+            SplittableRandom[] randoms = new SplittableRandom[chunks];
+
+            for (int c = 0; c < chunks; c++) {
+                bounds[c] = Math.max(c > 0 ? bounds[c - 1] : 0, align(file, length * c / chunks));
+                randoms[c] = random.split();
+            }
+            bounds[chunks] = length;
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                return pool.invoke(new Chunks(file, bounds, randoms, k, 0, chunks));
+            } finally {
+                pool.shutdown();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * First whitespace byte at or after position, so no token is split.
+     */
+    private static long align(FileChannel file, long position) throws IOException
+    {
+        if (position == 0) {
+            return 0;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        long at = position;
+
+        while (true) {
+            block.clear();
+            int read = file.read(block, at);
+            if (read < 0) {
+                return file.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (Tokenizer.isSpace(block.get(i))) {
+                    return at + i;
+                }
+            }
+            at += read;
+        }
+    }
+
+    /**
+     * Chunks [lo, hi) sampled by halves and merged.
+     */
+    private static class Chunks extends RecursiveTask<ReservoirSketch<String>>
+    {
+        private final FileChannel file;
+        private final long[] bounds;
+        private final SplittableRandom[] randoms;
+        private final int k, lo, hi;
+
+        Chunks(FileChannel file, long[] bounds, SplittableRandom[] randoms, int k, int lo, int hi)
+        {
+            this.file = file;
+            this.bounds = bounds;
+            this.randoms = randoms;
+            this.k = k;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected ReservoirSketch<String> compute()
+        {
+            if (hi - lo == 1) {
+                try {
+                    ByteBuffer chunk = file.map(FileChannel.MapMode.READ_ONLY, bounds[lo], bounds[hi] - bounds[lo]);
+
+                    return sample(new Tokenizer(chunk), k, randoms[lo]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            int mid = (lo + hi) >>> 1;
+            Chunks right = new Chunks(file, bounds, randoms, k, mid, hi);
+            right.fork();
+
+            ReservoirSketch<String> sketch = new Chunks(file, bounds, randoms, k, lo, mid).compute();
+            sketch.merge(right.join());
+
+            return sketch;
+        }
+    }
+
+    /**
+     * Whitespace separated tokens of a byte stream, read through one reused
+     * buffer. Tokens are UTF-8 and only become Strings when asked for.
+     */
+    static class Tokenizer
+    {
+        private final ReadableByteChannel in;
+        private final ByteBuffer buffer;
+        private boolean eof;
+
+        // Bytes of the current token, grows to the longest token.
+        private byte[] token = new byte[64];
+
+        Tokenizer(InputStream in)
+        {
+            this.in = Channels.newChannel(in);
+            buffer = ByteBuffer.allocate(1 << 16);
+            buffer.flip(); // Start empty.
+        }
+
+        /**
+         * Tokens of the remaining bytes of buffer, e.g. a mapped file chunk.
+         */
+        Tokenizer(ByteBuffer buffer)
+        {
+            this.in = null;
+            this.buffer = buffer;
+            eof = true;
+        }
+
+        /**
+         * Move to the start of the next token, false at end of input.
+         */
+        boolean hasNext()
+        {
+            while (true) {
+                while (buffer.hasRemaining()) {
+                    if (!isSpace(buffer.get(buffer.position()))) {
+                        return true;
+                    }
+                    buffer.get();
+                }
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Current token as String.
+         */
+        String next()
+        {
+            int n = 0;
+
+            while (buffer.hasRemaining() || fill()) {
+                byte b = buffer.get(buffer.position());
+                if (isSpace(b)) {
+                    break;
+                }
+                if (n == token.length) {
+                    byte[] copy = new byte[token.length * 2];
+                    System.arraycopy(token, 0, copy, 0, n);
+                    token = copy;
+                }
+                token[n++] = b;
+                buffer.get();
+            }
+
+            return new String(token, 0, n, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Pass over current token without decoding it.
+         */
+        void skip()
+        {
+            while (buffer.hasRemaining() || fill()) {
+                if (isSpace(buffer.get(buffer.position()))) {
+                    return;
+                }
+                buffer.get();
+            }
+        }
+
+        /**
+         * Read more input into the buffer, false at end of input.
+         */
+        private boolean fill()
+        {
+            if (eof) {
+                return false;
+            }
+
+            buffer.clear();
+            try {
+                int read = 0;
+                while (read == 0) {
+                    read = in.read(buffer);
+                }
+                eof = read < 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.flip();
+
+            return !eof;
+        }
+
+        // Bytes of multi-byte UTF-8 characters are never below 0x80.
+        static boolean isSpace(byte b)
+        {
+            return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+        }
+    }
 }
@@ -0,0 +1,157 @@
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Weighted random sample of at most k items of a stream (A-Res, Efraimidis
+ * and Spirakis). Item with weight w gets key u^(1/w) for uniform u, and the k
+ * largest keys are kept. Keys are compared as log(u) / w, which keeps their
+ * order and does not underflow for large weights. Merging keeps the k largest
+ * keys of both sketches, so shards can be sampled in parallel.
+ */
+public class WeightedReservoirSketch<Item> implements Iterable<Item>
+{
+    private final int k;
+    private final SplittableRandom random;
+
+    // Smallest key on top, it is the one replaced by a larger key.
+    private final PriorityQueue<Entry<Item>> heap = new PriorityQueue<Entry<Item>>();
+
+    public WeightedReservoirSketch(int k)
+    {
+        this(k, new SplittableRandom());
+    }
+
+    public WeightedReservoirSketch(int k, SplittableRandom random)
+    {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (random == null) {
+            throw new NullPointerException();
+        }
+
+        this.k = k;
+        this.random = random;
+    }
+
+    /**
+     * Sample one of 1..n weighted by value, in two merged shards. Item i
+     * should be picked with probability i / (n (n + 1) / 2).
+     *
+     * Usage: WeightedReservoirSketch [n [reps]]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        SplittableRandom random = new SplittableRandom(1);
+        int[] hits = new int[n + 1];
+
+        for (int r = 0; r < reps; r++) {
+            WeightedReservoirSketch<Integer> left = new WeightedReservoirSketch<Integer>(1, random.split());
+            WeightedReservoirSketch<Integer> right = new WeightedReservoirSketch<Integer>(1, random.split());
+
+            for (int i = 1; i <= n; i++) {
+                if (i % 3 == 0) {
+                    left.add(i, i);
+                } else {
+                    right.add(i, i);
+                }
+            }
+
+            left.merge(right);
+            hits[left.iterator().next()]++;
+        }
+
+        double total = n * (n + 1) / 2.0;
+        double worst = 0;
+        for (int i = 1; i <= n; i++) {
+            worst = Math.max(worst, Math.abs(hits[i] / (reps * i / total) - 1));
+        }
+
+        StdOut.println("Picks follow weights:  " + (worst < 0.05) + " (max deviation " + worst + ")");
+    }
+
+    public Iterator<Item> iterator()
+    {
+        final Iterator<Entry<Item>> entries = heap.iterator();
+
+        return new Iterator<Item>() {
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public boolean hasNext()
+            {
+                return entries.hasNext();
+            }
+
+            public Item next()
+            {
+                return entries.next().item;
+            }
+        };
+    }
+
+    public int size()
+    {
+        return heap.size();
+    }
+
+    public void add(Item item, double weight)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException();
+        }
+
+        // 1 - nextDouble() is in (0, 1], log never sees 0.
+        offer(new Entry<Item>(item, Math.log(1 - random.nextDouble()) / weight));
+    }
+
+    /**
+     * Keep the k largest keys of both sketches. Other is left unchanged.
+     */
+    public void merge(WeightedReservoirSketch<Item> other)
+    {
+        if (other.k != k) {
+            throw new IllegalArgumentException();
+        }
+
+        for (Entry<Item> entry : other.heap) {
+            offer(entry);
+        }
+    }
+
+    private void offer(Entry<Item> entry)
+    {
+        if (heap.size() < k) {
+            heap.add(entry);
+        } else if (k > 0 && entry.key > heap.peek().key) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    private static class Entry<Item> implements Comparable<Entry<Item>>
+    {
+        private final Item item;
+        private final double key;
+
+        Entry(Item item, double key)
+        {
+            this.item = item;
+            this.key = key;
+        }
+
+        public int compareTo(Entry<Item> that)
+        {
+            return Double.compare(key, that.key);
+        }
+    }
+}
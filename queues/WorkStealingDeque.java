@@ -0,0 +1,213 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Chase-Lev work-stealing deque, the per-worker task queue of a scheduler.
+ *
+ * The owning thread pushes and pops at the bottom (LIFO) without locks or CAS,
+ * except when it races with a thief for the very last item. Any other thread
+ * steals from the top (FIFO) with a single CAS. The array grows when full and
+ * old arrays stay valid for thieves still reading them.
+ */
+public class WorkStealingDeque<Item>
+{
+    // Next index to steal, only ever increases.
+    private final AtomicLong top = new AtomicLong();
+
+    // Next index to push, written by the owner only.
+    private volatile long bottom;
+
+    // Circular buffer, capacity is always a power of two.
+    private volatile AtomicReferenceArray<Item> items;
+
+    public WorkStealingDeque()
+    {
+        items = new AtomicReferenceArray<Item>(16);
+    }
+
+    /**
+     * Owner runs tasks 0..n-1 by pushing and popping while thieves steal.
+     * Every task must run exactly once.
+     *
+     * Usage: WorkStealingDeque [thieves [tasks]]
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        final int thieves = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        final WorkStealingDeque<Integer> deque = new WorkStealingDeque<Integer>();
+        final AtomicIntegerArray runs = new AtomicIntegerArray(tasks);
+        final AtomicLong done = new AtomicLong();
+        Thread[] workers = new Thread[thieves];
+
+        for (int t = 0; t < thieves; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run()
+                {
+                    while (done.get() < tasks) {
+                        Integer task = deque.steal();
+                        if (task != null) {
+                            runs.incrementAndGet(task);
+                            done.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+
+        // Owner pushes in bursts and pops part of each burst itself.
+        for (int i = 0; i < tasks; i++) {
+            deque.push(i);
+
+            if (i % 8 == 7) {
+                for (int k = 0; k < 4; k++) {
+                    Integer task = deque.pop();
+                    if (task != null) {
+                        runs.incrementAndGet(task);
+                        done.incrementAndGet();
+                    }
+                }
+            }
+        }
+        for (Integer task = deque.pop(); task != null; task = deque.pop()) {
+            runs.incrementAndGet(task);
+            done.incrementAndGet();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int once = 0;
+        for (int i = 0; i < tasks; i++) {
+            if (runs.get(i) == 1) {
+                once++;
+            }
+        }
+
+        StdOut.println("Every task ran once:      " + (once == tasks));
+        StdOut.println("Deque should be empty:    " + deque.isEmpty());
+
+        deque.push(1);
+        deque.push(2);
+        deque.push(3);
+
+        StdOut.println("Owner pops newest (3):    " + (deque.pop() == 3));
+        StdOut.println("Thief steals oldest (1):  " + (deque.steal() == 1));
+        StdOut.println("Size should be 1:         " + (deque.size() == 1));
+    }
+
+    /**
+     * Approximate number of items, exact when no other thread is active.
+     */
+    public int size()
+    {
+        long n = bottom - top.get();
+
+        return n > 0 ? (int) n : 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Add item at the bottom. Owner thread only.
+     */
+    public void push(Item item)
+    {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<Item> a = items;
+
+        // Items array is full -> resize.
+        if (b - t >= a.length() - 1) {
+            a = grow(a, t, b);
+        }
+
+        a.set((int) b & (a.length() - 1), item);
+
+        // Publishing bottom makes the item visible to thieves.
+        bottom = b + 1;
+    }
+
+    /**
+     * Remove newest item from the bottom, null if deque is empty. Owner thread only.
+     */
+    public Item pop()
+    {
+        long b = bottom - 1;
+        AtomicReferenceArray<Item> a = items;
+
+        // Volatile write of bottom before volatile read of top: thieves see
+        // the claim on the item before we check whether they got it.
+        bottom = b;
+        long t = top.get();
+
+        if (t > b) {
+            bottom = b + 1; // Empty, restore.
+            return null;
+        }
+
+        int i = (int) b & (a.length() - 1);
+        Item item = a.get(i);
+
+        if (t == b) {
+            // Last item, thieves may race for it.
+            if (!top.compareAndSet(t, t + 1)) {
+                item = null;
+            }
+            bottom = b + 1;
+        } else {
+            a.set(i, null); // Avoid loitering, no thief reads below top.
+        }
+
+        return item;
+    }
+
+    /**
+     * Remove oldest item from the top, any thread. Null if deque is empty
+     * or another thread took the item first, callers simply try again.
+     */
+    public Item steal()
+    {
+        long t = top.get();
+        long b = bottom;
+
+        if (t >= b) {
+            return null;
+        }
+
+        AtomicReferenceArray<Item> a = items;
+        Item item = a.get((int) t & (a.length() - 1));
+
+        if (!top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+
+        return item;
+    }
+
+    /**
+     * Copy live items [t, b) to an array twice as large, keeping their indices.
+     */
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> a, long t, long b)
+    {
+        AtomicReferenceArray<Item> copy = new AtomicReferenceArray<Item>(a.length() * 2);
+
+        for (long i = t; i < b; i++) {
+            copy.set((int) i & (copy.length() - 1), a.get((int) i & (a.length() - 1)));
+        }
+        items = copy;
+
+        return copy;
+    }
+}